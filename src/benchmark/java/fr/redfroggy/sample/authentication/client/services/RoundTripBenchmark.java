@@ -0,0 +1,244 @@
+package fr.redfroggy.sample.authentication.client.services;
+
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import fr.redfroggy.sample.authentication.server.configuration.TicketSettings;
+import fr.redfroggy.sample.authentication.server.configuration.Transport;
+import fr.redfroggy.sample.authentication.server.services.ServerService;
+import fr.redfroggy.sample.authentication.server.services.SessionStore;
+import fr.redfroggy.sample.authentication.server.services.TicketService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client and server communicating over a loopback socket, in the same process
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected static final String MESSAGE = "SECRET MESSAGE";
+
+    /**
+     * Messages sent per pipelined invocation, also the pipeline window
+     */
+    protected static final int PIPELINE_WINDOW = 16;
+
+    /**
+     * Messages per batch command
+     */
+    protected static final int BATCH_SIZE = 16;
+
+    protected static final List<String> BATCH = Collections.nCopies(BATCH_SIZE, MESSAGE);
+
+    /**
+     * Server listening on loopback interface
+     */
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"BLOCKING", "VIRTUAL", "NIO"})
+        protected Transport transport;
+
+        protected ServerService service;
+
+        protected ServerSocket socket;
+
+        protected ExecutorService sessionExecutor;
+
+        protected Thread thread;
+
+        /**
+         * Ticket of a first session, to resume it
+         */
+        protected SessionTicket ticket;
+
+        @Setup
+        public void start() throws Exception {
+            SocketSettings settings = new SocketSettings();
+            settings.setTransport(transport);
+
+            if (Transport.NIO.equals(transport)) {
+                socket = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).socket();
+            } else {
+                socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            }
+            if (Transport.VIRTUAL.equals(transport)) {
+                sessionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+            } else {
+                sessionExecutor = Executors.newCachedThreadPool();
+            }
+
+            service = new ServerService();
+            ReflectionTestUtils.setField(service, "socket", socket);
+            ReflectionTestUtils.setField(service, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+            ReflectionTestUtils.setField(service, "sessionExecutor", sessionExecutor);
+            ReflectionTestUtils.setField(service, "settings", settings);
+            ReflectionTestUtils.setField(service, "sessionStore", new SessionStore(100000, 3600000, 16));
+            TicketService ticketService = new TicketService();
+            ReflectionTestUtils.setField(ticketService, "settings", new TicketSettings());
+            ReflectionTestUtils.setField(service, "ticketService", ticketService);
+
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    service.run();
+                }
+            }, "server");
+            thread.start();
+
+            ClientService client = connect();
+            client.connect();
+            ticket = client.requestTicket();
+            client.socket.close();
+        }
+
+        @TearDown
+        public void stop() throws InterruptedException {
+            service.stop();
+            thread.join();
+        }
+
+        protected ClientService connect() throws IOException {
+            ClientService client = new ClientService();
+            ReflectionTestUtils.setField(client, "socket", new Socket(socket.getInetAddress(), socket.getLocalPort()));
+            ReflectionTestUtils.setField(client, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+            return client;
+        }
+    }
+
+    /**
+     * Authenticated client connection, kept for the whole trial
+     */
+    @State(Scope.Thread)
+    public static class Session {
+
+        protected ClientService client;
+
+        @Setup(Level.Trial)
+        public void connect(Server server) throws Exception {
+            client = server.connect();
+            client.connect();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            client.socket.close();
+        }
+    }
+
+    /**
+     * Authenticated client connection sending messages through a pipeline, kept for the whole trial
+     */
+    @State(Scope.Thread)
+    public static class PipelinedSession {
+
+        protected ClientService client;
+
+        protected MessagePipeline pipeline;
+
+        @Setup(Level.Trial)
+        public void connect(Server server) throws Exception {
+            client = server.connect();
+            client.connect();
+            pipeline = client.pipeline(PIPELINE_WINDOW);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            pipeline.close();
+            client.socket.close();
+        }
+    }
+
+    /**
+     * Full session: connection, three pass authentication and one message
+     */
+    @Benchmark
+    public void handshake(Server server) throws Exception {
+        ClientService client = server.connect();
+        try {
+            client.connect();
+            client.sendMessage(MESSAGE);
+        } finally {
+            client.socket.close();
+        }
+    }
+
+    /**
+     * Resumed session: connection, resumption from a ticket and one message
+     */
+    @Benchmark
+    public void resumedHandshake(Server server) throws Exception {
+        ClientService client = server.connect();
+        try {
+            client.connect(server.ticket);
+            client.sendMessage(MESSAGE);
+        } finally {
+            client.socket.close();
+        }
+    }
+
+    /**
+     * Message and its CRC check on an authenticated session
+     */
+    @Benchmark
+    public void message(Session session) throws Exception {
+        session.client.sendMessage(MESSAGE);
+    }
+
+    /**
+     * Messages sent in batch commands, score is per message
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean batchedMessage(Session session) throws Exception {
+        return session.client.sendMessages(BATCH);
+    }
+
+    /**
+     * Messages sent without waiting for each acknowledgement, score is per message
+     */
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_WINDOW)
+    public boolean pipelinedMessage(PipelinedSession session) throws Exception {
+        CompletableFuture<Boolean> last = null;
+        for (int i = 0; i < PIPELINE_WINDOW; i++) {
+            last = session.pipeline.submit(MESSAGE);
+        }
+        return last.get();
+    }
+}
@@ -0,0 +1,81 @@
+package fr.redfroggy.sample.authentication.commons.protocol;
+
+import fr.redfroggy.sample.authentication.commons.utils.BufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command building, framing and decoding
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandSetBenchmark {
+
+    @Param({"16", "256", "4096"})
+    protected int size;
+
+    protected final BufferPool bufferPool = new BufferPool(6, 20, 4);
+
+    protected final FrameDecoder decoder = new FrameDecoder(bufferPool);
+
+    protected byte[] payload;
+
+    protected ByteBuffer frame;
+
+    @Setup
+    public void init() {
+        payload = new byte[size];
+        new Random(0).nextBytes(payload);
+        frame = ByteBuffer.wrap(CommandSet.frame(CommandSet.sendMessage(payload)));
+    }
+
+    @Benchmark
+    public byte[] sendMessage() {
+        return CommandSet.sendMessage(payload);
+    }
+
+    @Benchmark
+    public byte[] frame() {
+        return CommandSet.frame(CommandSet.sendMessage(payload));
+    }
+
+    @Benchmark
+    public int encode() {
+        ByteBuffer buffer = bufferPool.acquire(CommandSet.frameSize(payload.length));
+        CommandSet.encode(buffer, CommandSet.Instruction.MSG, payload);
+        int position = buffer.position();
+        bufferPool.release(buffer);
+        return position;
+    }
+
+    @Benchmark
+    public byte decode() throws Exception {
+        frame.rewind();
+        ByteBuffer command = decoder.decode(frame);
+        byte code = command.get(0);
+        bufferPool.release(command);
+        return code;
+    }
+
+    @Benchmark
+    public CommandSet.Instruction instruction() {
+        return CommandSet.Instruction.get(CommandSet.Instruction.MSG.getCode());
+    }
+}
@@ -0,0 +1,53 @@
+package fr.redfroggy.sample.authentication.commons.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checksum of acknowledged messages, written into an acknowledgement as the server does
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageChecksumBenchmark {
+
+    @Param({"CRC32", "CRC32C"})
+    protected ChecksumAlgorithm algorithm;
+
+    @Param({"64", "4096", "1048576"})
+    protected int size;
+
+    protected byte[] data;
+
+    protected MessageChecksum checksum;
+
+    protected final byte[] acknowledgement = new byte[1 + MessageChecksum.SIZE];
+
+    @Setup
+    public void init() {
+        data = new byte[size];
+        new Random(0).nextBytes(data);
+        checksum = new MessageChecksum(algorithm);
+    }
+
+    @Benchmark
+    public byte[] checksum() {
+        checksum.reset().update(data).write(acknowledgement, 1);
+        return acknowledgement;
+    }
+}
@@ -0,0 +1,91 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPairGenerator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode throughput of each algorithm
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherServiceBenchmark {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+    protected static final byte[] KEY_DES = BytesUtils.hexToBytes("0011223344556677");
+    protected static final byte[] KEY_TDES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+    protected static final byte[] KEY_TKTDES = BytesUtils.hexToBytes("77885DD66E8F6F2B4A54E54411224455DD66E8F6F2B4A54E");
+
+    @Param({"DES", "TDES", "TKTDES", "AES", "RSA"})
+    protected Algorithm algorithm;
+
+    /**
+     * Message size, must fit in a single RSA block (2048 bits key with PKCS#1 padding)
+     */
+    @Param({"16", "128"})
+    protected int size;
+
+    protected CipherService service;
+
+    protected byte[] message;
+
+    protected byte[] encoded;
+
+    @Setup
+    public void init() throws Exception {
+        switch (algorithm) {
+            case DES:
+                service = new CipherService(algorithm, KEY_DES);
+                break;
+            case TDES:
+                service = new CipherService(algorithm, KEY_TDES);
+                break;
+            case TKTDES:
+                service = new CipherService(algorithm, KEY_TKTDES);
+                break;
+            case AES:
+                service = new CipherService(algorithm, KEY_AES);
+                break;
+            default:
+                KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm.getKeyAlgorithm());
+                generator.initialize(2048);
+                service = new CipherService(algorithm, null);
+                service.keyPair = generator.generateKeyPair();
+                service.setKey(service.keyPair.getPublic().getEncoded());
+        }
+
+        message = new byte[size];
+        new Random(0).nextBytes(message);
+        if (algorithm.getBlocSize() > 0) {
+            message = BytesUtils.pad(message, algorithm.getBlocSize());
+        }
+        encoded = service.encode(message);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return service.encode(message);
+    }
+
+    @Benchmark
+    public byte[] decode() throws Exception {
+        return service.decode(encoded);
+    }
+}
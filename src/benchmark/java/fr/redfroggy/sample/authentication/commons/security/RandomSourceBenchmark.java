@@ -0,0 +1,51 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Challenge generation by concurrent handshakes: shared system generator against per thread and pre-generated sources
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RandomSourceBenchmark {
+
+    protected final SecureRandom shared = new SecureRandom();
+
+    protected final RandomSource perThread = new RandomSource(0);
+
+    protected final RandomSource pregenerated = new RandomSource(4096);
+
+    @Benchmark
+    public byte[] sharedSecureRandom() {
+        byte[] challenge = new byte[RandomSource.BLOCK_SIZE];
+        shared.nextBytes(challenge);
+        return challenge;
+    }
+
+    @Benchmark
+    public byte[] perThread() {
+        return perThread.next(RandomSource.BLOCK_SIZE);
+    }
+
+    @Benchmark
+    public byte[] pregenerated() {
+        return pregenerated.next(RandomSource.BLOCK_SIZE);
+    }
+}
@@ -0,0 +1,81 @@
+package fr.redfroggy.sample.authentication.commons.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Byte utilities used on each message
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BytesUtilsBenchmark {
+
+    /**
+     * Data size, not a multiple of padding bloc so padding is always applied
+     */
+    @Param({"13", "250", "4090"})
+    protected int size;
+
+    protected byte[] data;
+
+    protected byte[] padded;
+
+    protected final StringBuilder hexa = new StringBuilder();
+
+    protected char[] hexaChars;
+
+    @Setup
+    public void init() {
+        data = new byte[size];
+        new Random(0).nextBytes(data);
+        padded = BytesUtils.pad(data, 16);
+        hexaChars = new char[size * 3];
+    }
+
+    @Benchmark
+    public byte[] pad() {
+        return BytesUtils.pad(data, 16);
+    }
+
+    @Benchmark
+    public byte[] unpad() {
+        return BytesUtils.unpad(padded);
+    }
+
+    @Benchmark
+    public byte[] crc32() {
+        return BytesUtils.crc32(data);
+    }
+
+    @Benchmark
+    public String bytesToHex() {
+        return BytesUtils.bytesToHex(data, BytesUtils.DEFAULT_HEXA_DELIMITER);
+    }
+
+    @Benchmark
+    public int appendHex() {
+        hexa.setLength(0);
+        return BytesUtils.appendHex(hexa, data, 0, data.length, BytesUtils.DEFAULT_HEXA_DELIMITER, 0).length();
+    }
+
+    @Benchmark
+    public int writeHex() {
+        return BytesUtils.writeHex(data, 0, data.length, BytesUtils.DEFAULT_HEXA_DELIMITER, hexaChars, 0);
+    }
+}
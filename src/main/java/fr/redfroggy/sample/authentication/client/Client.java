@@ -1,14 +1,18 @@
 package fr.redfroggy.sample.authentication.client;
 
+import fr.redfroggy.sample.authentication.client.configuration.LoadSettings;
 import fr.redfroggy.sample.authentication.client.services.ClientService;
+import fr.redfroggy.sample.authentication.client.services.LoadGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 
-import javax.annotation.PostConstruct;
+import jakarta.annotation.PostConstruct;
 
 /**
  * Client application
@@ -21,9 +25,25 @@ public class Client {
     @Autowired
     protected ClientService clientService;
 
+    @Autowired
+    protected LoadGenerator loadGenerator;
+
+    @Autowired
+    protected LoadSettings loadSettings;
+
+    /**
+     * Metrics registry, created before client runs
+     */
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
     @PostConstruct
     protected void run() {
-        clientService.run();
+        if (loadSettings.getConnections() > 0) {
+            loadGenerator.run();
+        } else {
+            clientService.run();
+        }
     }
 
     /**
@@ -35,7 +55,7 @@ public class Client {
     public static void main(String[] args) throws Exception {
         Client.log.info("Client is running");
         SpringApplication app = new SpringApplication(Client.class);
-        app.setWebEnvironment(false);
+        app.setWebApplicationType(WebApplicationType.NONE);
         ConfigurableApplicationContext ctx = app.run(args);
         SpringApplication.exit(ctx);
         Client.log.info("Client stopped");
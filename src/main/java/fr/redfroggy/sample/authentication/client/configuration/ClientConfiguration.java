@@ -1,9 +1,18 @@
 package fr.redfroggy.sample.authentication.client.configuration;
 
+import com.google.common.util.concurrent.Futures;
+import fr.redfroggy.sample.authentication.commons.metrics.HandshakeRecorder;
 import fr.redfroggy.sample.authentication.commons.security.Algorithm;
 import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.security.KeyPairStore;
 import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -11,9 +20,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.Socket;
+import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Client configuration
@@ -27,13 +38,17 @@ public class ClientConfiguration {
     @Autowired
     protected KeySettings keySettings;
 
+    @Autowired
+    protected LatencySettings latencySettings;
+
     /**
-     * Construct client socket
+     * Construct client socket, not used in load mode which opens its own connections
      *
      * @return Client socket
      * @throws IOException If an error occurred during socket construction
      */
     @Bean
+    @ConditionalOnProperty(prefix = "load", name = "connections", havingValue = "0", matchIfMissing = true)
     public Socket getClientSocket() throws IOException {
         return new Socket(settings.getHost(), settings.getPort());
     }
@@ -44,10 +59,30 @@ public class ClientConfiguration {
      * @return Client cipher
      */
     @Bean
-    public CipherService getClientCipher() throws GeneralSecurityException {
+    public CipherService getClientCipher() throws IOException, GeneralSecurityException {
         Algorithm algorithm = Algorithm.valueOf(keySettings.getAlgorithm());
         byte[] key = BytesUtils.hexToBytes(keySettings.getKey());
-        return new CipherService(algorithm, key);
+        CipherService cipher = new CipherService(algorithm, key);
+        if (Algorithm.RSA.equals(algorithm)) {
+            cipher.setKeyPair(getKeyPair());
+            if (keySettings.isRsaHybrid()) {
+                cipher.setSessionAlgorithm(Algorithm.AES);
+            }
+        }
+        return cipher;
+    }
+
+    /**
+     * Construct metrics registry, meters are published through JMX (domain "metrics").
+     * Registry is added to the global registry, where communication meters are registered.
+     *
+     * @return Metrics registry
+     */
+    @Bean
+    public MeterRegistry getMeterRegistry() {
+        MeterRegistry registry = new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM);
+        Metrics.addRegistry(registry);
+        return registry;
     }
 
     /**
@@ -61,18 +96,33 @@ public class ClientConfiguration {
     }
 
     /**
-     * Construct key pair for RSA algorithm
+     * Construct recorder of handshake phases latency, writing interval histograms to latency log if enabled
      *
-     * @return Key pair
+     * @return Handshake latency recorder
      */
-    @Bean
-    public KeyPair getKeyPair() throws GeneralSecurityException {
-        if (Algorithm.RSA.equals(Algorithm.valueOf(keySettings.getAlgorithm()))) {
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance(Algorithm.valueOf(keySettings.getAlgorithm()).getKeyAlgorithm());
-            keyGen.initialize(keySettings.getRsaKeySize());
-            return keyGen.genKeyPair();
+    @Bean(destroyMethod = "close")
+    public HandshakeRecorder getHandshakeRecorder() {
+        HandshakeRecorder recorder = HandshakeRecorder.SHARED;
+        if (latencySettings.getInterval() > 0) {
+            recorder.start(latencySettings.getInterval(), TimeUnit.SECONDS);
         }
-        return null;
+        return recorder;
     }
 
+    /**
+     * Get key pair for RSA algorithm, from key files if configured
+     *
+     * @return Key pair, possibly still being loaded or generated
+     * @throws IOException              If key files cannot be read or written
+     * @throws GeneralSecurityException If key pair cannot be loaded or generated
+     */
+    protected Future<KeyPair> getKeyPair() throws IOException, GeneralSecurityException {
+        KeyPairStore store = new KeyPairStore(keySettings.getRsaKeySize(),
+                keySettings.getRsaPublicKey() == null ? null : Paths.get(keySettings.getRsaPublicKey()),
+                keySettings.getRsaPrivateKey() == null ? null : Paths.get(keySettings.getRsaPrivateKey()));
+        if (keySettings.isRsaAsync()) {
+            return store.getAsync();
+        }
+        return Futures.immediateFuture(store.get());
+    }
 }
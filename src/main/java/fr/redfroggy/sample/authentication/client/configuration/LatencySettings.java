@@ -0,0 +1,20 @@
+package fr.redfroggy.sample.authentication.client.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for handshake latency histograms
+ */
+@Component
+@ConfigurationProperties(prefix = "latency")
+@Data
+public class LatencySettings {
+
+    /**
+     * Interval between histogram snapshots written to latency log (seconds), 0 to disable them
+     * default: 10
+     */
+    protected int interval = 10;
+}
@@ -0,0 +1,51 @@
+package fr.redfroggy.sample.authentication.client.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for load generation
+ */
+@Component
+@ConfigurationProperties(prefix = "load")
+@Data
+public class LoadSettings {
+
+    /**
+     * Number of concurrent connections, 0 for a single interactive session
+     * default: 0
+     */
+    protected int connections = 0;
+
+    /**
+     * Number of messages sent by each connection
+     * default: 100
+     */
+    protected int messages = 100;
+
+    /**
+     * Messages per second sent by each connection, 0 for no limit
+     * default: 10
+     */
+    protected int rate = 10;
+
+    /**
+     * Messages waiting for acknowledgement per connection, 1 to wait for each acknowledgement before next message
+     * default: 1
+     */
+    protected int pipeline = 1;
+
+    /**
+     * Messages sent in each batch command when not pipelined, 1 to send messages one by one
+     * default: 1
+     */
+    protected int batch = 1;
+
+    /**
+     * Size of synthetic messages (characters)
+     * default: 64
+     */
+    protected int messageSize = 64;
+
+}
@@ -1,5 +1,6 @@
 package fr.redfroggy.sample.authentication.client.configuration;
 
+import fr.redfroggy.sample.authentication.commons.protocol.ChecksumAlgorithm;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -24,4 +25,10 @@ public class SocketSettings {
      */
     protected int port = 12345;
 
+    /**
+     * Checksum algorithm of message acknowledgements (CRC32, CRC32C), negotiated with server once authenticated
+     * default: CRC32C
+     */
+    protected ChecksumAlgorithm checksum = ChecksumAlgorithm.CRC32C;
+
 }
@@ -1,23 +1,42 @@
 package fr.redfroggy.sample.authentication.client.services;
 
 import com.google.common.primitives.Bytes;
+import fr.redfroggy.sample.authentication.client.configuration.SocketSettings;
 import fr.redfroggy.sample.authentication.commons.exceptions.AuthenticationException;
 import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
 import fr.redfroggy.sample.authentication.commons.exceptions.TransmissionException;
+import fr.redfroggy.sample.authentication.commons.metrics.HandshakePhase;
+import fr.redfroggy.sample.authentication.commons.metrics.HandshakeRecorder;
+import fr.redfroggy.sample.authentication.commons.protocol.ChecksumAlgorithm;
 import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.protocol.MessageBatch;
+import fr.redfroggy.sample.authentication.commons.protocol.MessageChecksum;
 import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
 import fr.redfroggy.sample.authentication.commons.services.AbstractCommunicationService;
-import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.Cipher;
 import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Client service
@@ -26,12 +45,54 @@ import java.util.Arrays;
 @Service
 public class ClientService extends AbstractCommunicationService {
 
-    @Autowired
+    /**
+     * Prefix of an input line naming a file to send
+     */
+    public static final String FILE_PREFIX = "file:";
+
+    /**
+     * Size of file windows mapped at once, a multiple of algorithms bloc size
+     */
+    protected static final int FILE_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    @Autowired(required = false)
     protected Socket socket;
 
     @Autowired
     protected BufferedReader inFromUser;
 
+    @Autowired(required = false)
+    protected SocketSettings settings;
+
+    /**
+     * Checksum of acknowledged messages, CRC32 until another algorithm is negotiated
+     */
+    @Getter
+    protected MessageChecksum checksum = new MessageChecksum(ChecksumAlgorithm.CRC32);
+
+    /**
+     * Recorder of handshake phases latency
+     */
+    @Autowired
+    protected HandshakeRecorder handshakeRecorder = HandshakeRecorder.SHARED;
+
+    /**
+     * Construct service, dependencies are injected
+     */
+    public ClientService() {
+    }
+
+    /**
+     * Construct service for a connection managed by the caller
+     *
+     * @param socket        Connection to server
+     * @param cipherService Cipher of the connection
+     */
+    public ClientService(Socket socket, CipherService cipherService) {
+        this.socket = socket;
+        this.cipherService = cipherService;
+    }
+
     /**
      * Run client communication with server
      */
@@ -41,14 +102,9 @@ public class ClientService extends AbstractCommunicationService {
             log.info("Client ready");
             boolean endOfTransmission = false;
 
-            out = new DataOutputStream(socket.getOutputStream());
-            in = socket.getInputStream();
-
-            if (Algorithm.RSA.equals(cipherService.getAlgorithm())) {
-                exchangeRSAKeys();
-            } else {
-                // Three Pass Authentication
-                authenticate();
+            connect();
+            if (settings != null) {
+                negotiateChecksum(settings.getChecksum());
             }
 
             // Send message
@@ -58,6 +114,8 @@ public class ClientService extends AbstractCommunicationService {
 
                 if (sentence == null || sentence.isEmpty()) {
                     endOfTransmission = true;
+                } else if (sentence.startsWith(FILE_PREFIX)) {
+                    sendFile(Paths.get(sentence.substring(FILE_PREFIX.length())));
                 } else {
                     sendMessage(sentence);
                 }
@@ -76,6 +134,153 @@ public class ClientService extends AbstractCommunicationService {
         }
     }
 
+    /**
+     * Open communication with server and authenticate
+     *
+     * @throws IOException             If socket streams cannot be opened
+     * @throws AuthenticationException If authentication failed
+     */
+    public void connect() throws IOException, AuthenticationException {
+        connect(null);
+    }
+
+    /**
+     * Open communication with server and resume session from a ticket,
+     * or authenticate if there is no ticket or if it is refused
+     *
+     * @param ticket Session ticket (may be null)
+     * @throws IOException             If socket streams cannot be opened
+     * @throws AuthenticationException If authentication failed
+     */
+    public void connect(SessionTicket ticket) throws IOException, AuthenticationException {
+        open(socket);
+
+        Algorithm algorithm = cipherService.getAlgorithm();
+        long start = System.nanoTime();
+        handshake(ticket);
+        meters.handshake(algorithm, System.nanoTime() - start);
+    }
+
+    /**
+     * Authenticate, resume session, or exchange RSA keys
+     *
+     * @param ticket Session ticket (may be null)
+     * @throws AuthenticationException If authentication failed
+     */
+    protected void handshake(SessionTicket ticket) throws AuthenticationException {
+        if (Algorithm.RSA.equals(cipherService.getAlgorithm())) {
+            exchangeRSAKeys();
+            if (cipherService.getSessionAlgorithm() != null) {
+                transportSessionKey();
+            }
+            return;
+        }
+
+        if (ticket != null) {
+            try {
+                resume(ticket);
+                return;
+            } catch (AuthenticationException e) {
+                log.info("Session resumption failed, authenticate", e);
+            }
+        }
+
+        // Three Pass Authentication
+        authenticate();
+    }
+
+    /**
+     * Request a ticket to resume current session on next connection
+     *
+     * @return Session ticket
+     * @throws AuthenticationException If server refused to issue a ticket
+     */
+    public SessionTicket requestTicket() throws AuthenticationException {
+        try {
+            byte[] result = send(CommandSet.Instruction.TKT, EMPTY);
+            if (result[0] != CommandSet.Instruction.SUC.getCode()) {
+                throw new AuthenticationException("Ticket refused (" + new String(result).substring(1) + ")");
+            }
+            return new SessionTicket(Arrays.copyOfRange(result, 1, result.length), cipherService.getKey());
+        } catch (CommunicationException e) {
+            throw new AuthenticationException("Ticket request failed because of communication error", e);
+        }
+    }
+
+    /**
+     * Resume session from a ticket, in a single exchange
+     *
+     * @param ticket Session ticket
+     * @throws AuthenticationException If session cannot be resumed, initial key is then restored
+     */
+    public void resume(SessionTicket ticket) throws AuthenticationException {
+        log.info("Session resumption");
+
+        byte[] initialKey = cipherService.getKey();
+        try {
+            // Prove knowledge of ticket session key
+            cipherService.setKey(ticket.getKey());
+            byte[] rndC = cipherService.random();
+            byte[] ekC = cipherService.encode(rndC);
+
+            byte[] payload = ByteBuffer.allocate(2 + ticket.getTicket().length + ekC.length)
+                    .putShort((short) ticket.getTicket().length).put(ticket.getTicket()).put(ekC)
+                    .array();
+            byte[] result = send(CommandSet.Instruction.RSM, payload);
+            if (result[0] != CommandSet.Instruction.SUC.getCode()) {
+                throw new AuthenticationException("Session resumption refused (" + new String(result).substring(1) + ")");
+            }
+
+            // Server proves knowledge of ticket session key
+            int blocSize = cipherService.getAlgorithm().getBlocSize();
+            byte[] dk = Arrays.copyOf(cipherService.decode(Arrays.copyOfRange(result, 1, result.length)), blocSize * 2);
+            byte[] rndS = Arrays.copyOfRange(dk, 0, blocSize);
+            if (!Arrays.equals(rndC, Arrays.copyOfRange(dk, blocSize, blocSize * 2))) {
+                throw new AuthenticationException("Session resumption failed, Server verification mismatch");
+            }
+
+            setSessionKey(rndC, rndS);
+            log.info("Session resumed");
+
+        } catch (AuthenticationException e) {
+            restoreKey(initialKey);
+            throw e;
+        } catch (GeneralSecurityException e) {
+            restoreKey(initialKey);
+            throw new AuthenticationException("Session resumption failed", e);
+        } catch (CommunicationException e) {
+            throw new AuthenticationException("Session resumption failed because of communication error", e);
+        }
+    }
+
+    /**
+     * Check that server did not reject a handshake, before using its response as raw bytes
+     *
+     * @param response Server response (challenge or public key)
+     * @return Response
+     * @throws AuthenticationException If server is busy
+     */
+    protected byte[] checkBusy(byte[] response) throws AuthenticationException {
+        if (Arrays.equals(response, CommandSet.busy())) {
+            throw new AuthenticationException("Authentication refused, server busy");
+        }
+        return response;
+    }
+
+    /**
+     * Restore cipher key after a failed resumption
+     *
+     * @param key Key to restore
+     * @throws AuthenticationException If key cannot be restored
+     */
+    protected void restoreKey(byte[] key) throws AuthenticationException {
+        try {
+            cipherService.setKey(key);
+        } catch (GeneralSecurityException e) {
+            throw new AuthenticationException("Cannot restore key", e);
+        }
+    }
+
     /**
      * Exchange RSA public keys between client and server
      *
@@ -85,7 +290,7 @@ public class ClientService extends AbstractCommunicationService {
         log.info("Exchange RSA keys");
 
         try {
-            byte[] serverPublicKey = send(CommandSet.exchangePublicKeys(cipherService.getKeyPair().getPublic().getEncoded()));
+            byte[] serverPublicKey = checkBusy(send(CommandSet.Instruction.PUB, cipherService.getKeyPair().getPublic().getEncoded()));
             cipherService.setKey(serverPublicKey);
         } catch (GeneralSecurityException e) {
             throw new AuthenticationException("Key exchange failed due to cryptographic error", e);
@@ -94,6 +299,42 @@ public class ClientService extends AbstractCommunicationService {
         }
     }
 
+    /**
+     * Transport a session key with RSA, then cipher messages with it (hybrid mode).
+     * Server without hybrid mode refuses it, messages are then ciphered with RSA.
+     *
+     * @throws AuthenticationException If session key cannot be transported
+     */
+    public void transportSessionKey() throws AuthenticationException {
+        log.info("Transport session key");
+
+        try {
+            int blocSize = cipherService.getSessionAlgorithm().getBlocSize();
+            byte[] rndC = cipherService.random(blocSize);
+            byte[] result = checkBusy(send(CommandSet.Instruction.KEY, cipherService.encode(rndC)));
+            if (result[0] != CommandSet.Instruction.SUC.getCode()) {
+                log.warn("Session key refused ({}), messages are ciphered with RSA", new String(result).substring(1));
+                return;
+            }
+
+            // Server proves it deciphered client random sequence
+            byte[] dk = Arrays.copyOf(cipherService.decode(Arrays.copyOfRange(result, 1, result.length)), blocSize * 2);
+            byte[] rndS = Arrays.copyOfRange(dk, 0, blocSize);
+            if (!Arrays.equals(rndC, Arrays.copyOfRange(dk, blocSize, blocSize * 2))) {
+                throw new AuthenticationException("Session key transport failed, Server verification mismatch");
+            }
+
+            cipherService.useSessionAlgorithm();
+            setSessionKey(rndC, rndS);
+            log.info("Session key transported, messages are ciphered with {}", cipherService.getAlgorithm());
+
+        } catch (GeneralSecurityException e) {
+            throw new AuthenticationException("Session key transport failed due to cryptographic error", e);
+        } catch (CommunicationException e) {
+            throw new AuthenticationException("Session key transport failed due to communication error", e);
+        }
+    }
+
     /**
      * Launch authentication process
      *
@@ -104,22 +345,27 @@ public class ClientService extends AbstractCommunicationService {
 
         try {
             // Client Authentication : Required challenge to server
-            byte[] rndS1 = send(CommandSet.getChallenge());
+            long start = System.nanoTime();
+            byte[] rndS1 = checkBusy(send(CommandSet.getChallenge()));
+            long challenged = System.nanoTime();
+            handshakeRecorder.record(HandshakePhase.CHALLENGE, challenged - start);
             byte[] rndC1 = cipherService.random();
 
             byte[] ek1 = cipherService.encode(Bytes.concat(rndC1, rndS1));
             cipherService.resetIV();
 
             // Client Authentication : Send challenge response to server
-            byte[] c1 = send(CommandSet.authenticateClient(ek1));
+            byte[] c1 = send(CommandSet.Instruction.AUC, ek1);
             if (c1[0] != CommandSet.Instruction.SUC.getCode()) {
                 throw new AuthenticationException("Authentication failed, Client verification mismatch (" + new String(c1).substring(1) + ")");
             }
             log.debug("Client verification success");
+            long clientAuthenticated = System.nanoTime();
+            handshakeRecorder.record(HandshakePhase.CLIENT_AUTHENTICATION, clientAuthenticated - challenged);
 
             // Server Authentication : Send challenge to server
             byte[] rndC2 = cipherService.random();
-            byte[] ek2 = send(CommandSet.authenticateServer(rndC2));
+            byte[] ek2 = send(CommandSet.Instruction.AUS, rndC2);
             byte[] c2 = cipherService.decode(ek2);
 
             // Server Authentication : Check server response
@@ -131,6 +377,7 @@ public class ClientService extends AbstractCommunicationService {
                 throw new AuthenticationException("Authentication failed, Server verification mismatch");
             }
             log.debug("Server verification success");
+            handshakeRecorder.record(HandshakePhase.SERVER_AUTHENTICATION, System.nanoTime() - clientAuthenticated);
 
             // Set session key
             setSessionKey(rndC1, rndS2);
@@ -143,38 +390,267 @@ public class ClientService extends AbstractCommunicationService {
         }
     }
 
+    /**
+     * Negotiate checksum algorithm of message acknowledgements, current algorithm is kept if server does not support it
+     *
+     * @param algorithm Checksum algorithm
+     * @return True if server accepted algorithm
+     * @throws CommunicationException If a communication error occurred
+     */
+    public boolean negotiateChecksum(ChecksumAlgorithm algorithm) throws CommunicationException {
+        if (algorithm.equals(checksum.getAlgorithm())) {
+            return true;
+        }
+        byte[] result = send(CommandSet.Instruction.CKS, new byte[]{algorithm.getCode()});
+        if (result[0] != CommandSet.Instruction.SUC.getCode()) {
+            log.info("Server refused checksum algorithm {} ({}), {} kept", algorithm, new String(result, 1, result.length - 1, StandardCharsets.UTF_8), checksum.getAlgorithm());
+            return false;
+        }
+        checksum = new MessageChecksum(algorithm);
+        log.debug("Checksum algorithm: {}", algorithm);
+        return true;
+    }
+
     /**
      * Send message to server
      *
      * @param msg Message content
+     * @return True if server acknowledged message with a valid CRC
      * @throws CommunicationException If an error occurred
      */
-    public void sendMessage(String msg) throws CommunicationException {
+    public boolean sendMessage(String msg) throws CommunicationException {
         try {
-            byte[] ekMsg = cipherService.encode(msg.getBytes());
-            byte[] result = send(CommandSet.sendMessage(ekMsg));
+            byte[] message = msg.getBytes();
+            byte[] result = send(CommandSet.Instruction.MSG, cipherService.encode(message));
+            return isAcknowledged(result, checksum.reset().update(message));
+        } catch (GeneralSecurityException e) {
+            throw new CommunicationException("Cannot send message because of cryptographic error", e);
+        } catch (TransmissionException e) {
+            throw new CommunicationException("Cannot send message because of communication error", e);
+        }
+    }
 
-            if (result[0] == CommandSet.Instruction.RCV.getCode()) {
-                // Check if checksum is equal
-                byte[] crc32ori = BytesUtils.crc32(msg.getBytes());
-                byte[] crc32res = Arrays.copyOfRange(result, 1, result.length);
+    /**
+     * Send message read from a stream, ciphered and sent by chunks as it is read: memory use does not depend on
+     * message size. Not available in RSA mode (without hybrid mode).
+     *
+     * @param input Message content, read until its end (stream is not closed)
+     * @return True if server acknowledged message with a valid CRC
+     * @throws CommunicationException If an error occurred
+     */
+    public boolean sendMessage(InputStream input) throws CommunicationException {
+        try {
+            Cipher cipher = cipherService.streamCipher(Cipher.ENCRYPT_MODE);
+            int blocSize = cipherService.getAlgorithm().getBlocSize();
+            byte[] chunk = new byte[CommandSet.STREAM_CHUNK_SIZE];
+            // Cipher keeps an incomplete bloc between chunks
+            byte[] ciphered = new byte[CommandSet.STREAM_CHUNK_SIZE + blocSize];
+            MessageChecksum crc = checksum.reset();
+            long length = 0;
 
-                if (!Arrays.equals(crc32ori, crc32res)) {
-                    throw new TransmissionException("Message CRC is invalid");
-                } else {
-                    log.debug("CRC valid");
+            write(CommandSet.Instruction.MSS, EMPTY, 0, 0);
+            int count;
+            while ((count = input.read(chunk)) >= 0) {
+                crc.update(chunk, 0, count);
+                length += count;
+                int size = cipher.update(chunk, 0, count, ciphered, 0);
+                if (size > 0) {
+                    write(CommandSet.Instruction.MSC, ciphered, 0, size);
                 }
+            }
+
+            byte[] result = endStream(cipher, length);
+            log.debug("Message stream sent: {} bytes", length);
+            return isAcknowledged(result, crc);
+
+        } catch (IOException e) {
+            throw new CommunicationException("Cannot read message stream", e);
+        } catch (GeneralSecurityException e) {
+            throw new CommunicationException("Cannot send message because of cryptographic error", e);
+        } catch (TransmissionException e) {
+            throw new CommunicationException("Cannot send message because of communication error", e);
+        }
+    }
+
+    /**
+     * Send message read from a channel, ciphered and sent by chunks as it is read
+     *
+     * @param channel Message content, read until its end (channel is not closed)
+     * @return True if server acknowledged message with a valid CRC
+     * @throws CommunicationException If an error occurred
+     * @see #sendMessage(InputStream)
+     */
+    public boolean sendMessage(ReadableByteChannel channel) throws CommunicationException {
+        return sendMessage(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Send a file to server: file is mapped in memory by windows, ciphered and sent by chunks
+     * (only available if server has a files directory)
+     *
+     * @param file File to send, server stores it under its name
+     * @return True if server acknowledged file with a valid CRC
+     * @throws CommunicationException If an error occurred
+     */
+    public boolean sendFile(Path file) throws CommunicationException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Cipher cipher = cipherService.streamCipher(Cipher.ENCRYPT_MODE);
+            long size = channel.size();
+            byte[] name = file.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+
+            byte[] opened = send(CommandSet.Instruction.FIL, ByteBuffer.allocate(8 + name.length).putLong(size).put(name).array());
+            if (opened[0] != CommandSet.Instruction.SUC.getCode()) {
+                log.error("Server refused file : " + new String(opened).substring(1));
+                return false;
+            }
+
+            MessageChecksum crc = checksum.reset();
+            ByteBuffer ciphered = ByteBuffer.allocate(CommandSet.STREAM_CHUNK_SIZE);
+            for (long position = 0; position < size; position += FILE_WINDOW_SIZE) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(FILE_WINDOW_SIZE, size - position));
+                crc.update(window.duplicate());
+                while (window.hasRemaining()) {
+                    // Windows are bloc aligned, each chunk is ciphered at once except the end of file
+                    ByteBuffer chunk = window.slice().limit(Math.min(CommandSet.STREAM_CHUNK_SIZE, window.remaining()));
+                    window.position(window.position() + chunk.remaining());
+                    ciphered.clear();
+                    cipher.update(chunk, ciphered);
+                    if (ciphered.position() > 0) {
+                        write(CommandSet.Instruction.MSC, ciphered.array(), 0, ciphered.position());
+                    }
+                }
+            }
+
+            byte[] result = endStream(cipher, size);
+            log.info("File {} sent: {} bytes", file, size);
+            return isAcknowledged(result, crc);
+
+        } catch (IOException e) {
+            throw new CommunicationException("Cannot read file " + file, e);
+        } catch (GeneralSecurityException e) {
+            throw new CommunicationException("Cannot send file because of cryptographic error", e);
+        } catch (TransmissionException e) {
+            throw new CommunicationException("Cannot send file because of communication error", e);
+        }
+    }
+
+    /**
+     * End a stream: send padding length followed by last bloc completed with zero bytes, and wait for acknowledgement
+     *
+     * @param cipher Stream cipher
+     * @param length Number of streamed bytes
+     * @return Server response
+     * @throws GeneralSecurityException If last bloc cannot be ciphered
+     * @throws CommunicationException   If a communication error occurred
+     */
+    protected byte[] endStream(Cipher cipher, long length) throws GeneralSecurityException, CommunicationException {
+        int blocSize = cipherService.getAlgorithm().getBlocSize();
+        int padding = (int) ((blocSize - length % blocSize) % blocSize);
+        byte[] last = new byte[1 + blocSize];
+        last[0] = (byte) padding;
+        int size = cipher.doFinal(new byte[padding], 0, padding, last, 1);
+        return send(CommandSet.Instruction.MSE, Arrays.copyOf(last, 1 + size));
+    }
+
+    /**
+     * Check server acknowledgement of a message
+     *
+     * @param result   Server response
+     * @param checksum Sent message checksum
+     * @return True if server acknowledged message, false if it returned an error
+     * @throws TransmissionException If acknowledged CRC is invalid
+     */
+    protected boolean isAcknowledged(byte[] result, MessageChecksum checksum) throws TransmissionException {
+        if (result[0] == CommandSet.Instruction.RCV.getCode()) {
+            // Check if checksum is equal, in place
+            if (result.length != 1 + MessageChecksum.SIZE || !checksum.matches(result, 1)) {
+                throw new TransmissionException("Message CRC is invalid");
+            }
+            log.debug("CRC valid");
+            return true;
+
+        } else if (result[0] == CommandSet.Instruction.ERR.getCode()) {
+            log.error("Server return error : " + new String(result).substring(1));
+        } else {
+            log.warn("Unexpected result");
+        }
+        return false;
+    }
+
+    /**
+     * Send a batch of messages to server, ciphered and acknowledged at once
+     *
+     * @param messages Messages content
+     * @return True if server acknowledged all messages with valid CRCs
+     * @throws CommunicationException If an error occurred
+     */
+    public boolean sendMessages(List<String> messages) throws CommunicationException {
+        try {
+            List<byte[]> batch = new ArrayList<>(messages.size());
+            for (String msg : messages) {
+                batch.add(msg.getBytes());
+            }
+            byte[] result = send(CommandSet.Instruction.MSB, cipherService.encode(MessageBatch.encode(batch)));
+
+            if (result[0] == CommandSet.Instruction.RCV.getCode()) {
+                // Check if each checksum is equal
+                if (result.length != 1 + batch.size() * MessageChecksum.SIZE) {
+                    throw new TransmissionException("Batch acknowledgement does not match messages count");
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    if (!checksum.reset().update(batch.get(i)).matches(result, 1 + i * MessageChecksum.SIZE)) {
+                        throw new TransmissionException("Message CRC is invalid (message " + i + " of batch)");
+                    }
+                }
+                log.debug("CRC valid");
+                return true;
 
             } else if (result[0] == CommandSet.Instruction.ERR.getCode()) {
                 log.error("Server return error : " + new String(result).substring(1));
             } else {
                 log.warn("Unexpected result");
             }
+            return false;
         } catch (GeneralSecurityException e) {
-            throw new CommunicationException("Cannot send message because of cryptographic error", e);
+            throw new CommunicationException("Cannot send messages because of cryptographic error", e);
         } catch (TransmissionException e) {
-            throw new CommunicationException("Cannot send message because of communication error", e);
+            throw new CommunicationException("Cannot send messages because of communication error", e);
         }
     }
 
+    /**
+     * Open a message pipeline on this connection, messages are then sent through the pipeline only
+     *
+     * @param window Maximum number of messages waiting for acknowledgement
+     * @return Message pipeline, to be closed once all messages are submitted
+     */
+    public MessagePipeline pipeline(int window) {
+        return new MessagePipeline(this, window);
+    }
+
+    /**
+     * Encode and send a pipelined message, without waiting for its acknowledgement
+     *
+     * @param sequence Message sequence number
+     * @param message  Message content
+     * @throws CommunicationException If an error occurred
+     */
+    protected void writeMessage(int sequence, byte[] message) throws CommunicationException {
+        try {
+            write(CommandSet.Instruction.MSQ, sequence, cipherService.encode(message));
+        } catch (GeneralSecurityException e) {
+            throw new CommunicationException("Cannot send message because of cryptographic error", e);
+        }
+    }
+
+    /**
+     * Wait for next acknowledgement of pipelined messages
+     *
+     * @return Acknowledgement command
+     * @throws CommunicationException If an error occurred
+     */
+    protected byte[] receiveAcknowledgement() throws CommunicationException {
+        return receive();
+    }
+
 }
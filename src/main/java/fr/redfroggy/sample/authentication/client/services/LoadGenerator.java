@@ -0,0 +1,191 @@
+package fr.redfroggy.sample.authentication.client.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import fr.redfroggy.sample.authentication.client.configuration.LoadSettings;
+import fr.redfroggy.sample.authentication.client.configuration.SocketSettings;
+import fr.redfroggy.sample.authentication.commons.exceptions.AuthenticationException;
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator: opens concurrent connections, authenticates each of them,
+ * then sends synthetic messages at a fixed rate
+ */
+@Slf4j
+@Service
+public class LoadGenerator {
+
+    @Autowired
+    protected LoadSettings loadSettings;
+
+    @Autowired
+    protected SocketSettings socketSettings;
+
+    @Autowired
+    protected CipherService cipherService;
+
+    /**
+     * Run load generation until every connection sent its messages
+     *
+     * @return Load report
+     */
+    public LoadReport run() {
+        int connections = loadSettings.getConnections();
+        log.info("Load generation: {} connections, {} messages of {} characters per connection, {} msg/s per connection",
+                connections, loadSettings.getMessages(), loadSettings.getMessageSize(), loadSettings.getRate());
+
+        LoadReport report = new LoadReport(connections);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(connections,
+                new ThreadFactoryBuilder().setNameFormat("load-%d").build());
+        for (int i = 0; i < connections; i++) {
+            executor.execute(new Worker(i, start, report));
+        }
+        executor.shutdown();
+
+        long begin = System.nanoTime();
+        start.countDown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            log.warn("Load generation interrupted");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        report.setDuration(System.nanoTime() - begin);
+
+        log.info("Load generation result: {}", report);
+        return report;
+    }
+
+    /**
+     * Session of a single connection
+     */
+    protected class Worker implements Runnable {
+
+        protected final int index;
+
+        protected final CountDownLatch start;
+
+        protected final LoadReport report;
+
+        protected Worker(int index, CountDownLatch start, LoadReport report) {
+            this.index = index;
+            this.start = start;
+            this.report = report;
+        }
+
+        @Override
+        public void run() {
+            Socket socket = null;
+            try {
+                start.await();
+
+                // Handshake: connection and authentication (or RSA keys exchange)
+                long begin = System.nanoTime();
+                socket = new Socket(socketSettings.getHost(), socketSettings.getPort());
+                ClientService client = new ClientService(socket, cipherService.copy());
+                client.connect();
+                report.handshake(index, System.nanoTime() - begin);
+                client.negotiateChecksum(socketSettings.getChecksum());
+
+                sendMessages(client);
+
+            } catch (IOException | AuthenticationException e) {
+                log.warn("Connection {} failed", index, e);
+                report.error();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (CommunicationException e) {
+                log.warn("Connection {} cannot send message", index, e);
+                report.error();
+            } finally {
+                close(socket);
+            }
+        }
+
+        /**
+         * Send messages, on a fixed schedule if a rate is set
+         *
+         * @param client Authenticated client
+         * @throws CommunicationException If a pipelined message cannot be sent
+         * @throws InterruptedException   If interrupted while waiting for room in the pipeline
+         */
+        protected void sendMessages(ClientService client) throws CommunicationException, InterruptedException {
+            if (loadSettings.getPipeline() > 1) {
+                try (MessagePipeline pipeline = client.pipeline(loadSettings.getPipeline())) {
+                    sendMessages(client, pipeline);
+                }
+            } else {
+                sendMessages(client, null);
+            }
+        }
+
+        /**
+         * Send messages, on a fixed schedule if a rate is set
+         *
+         * @param client   Authenticated client
+         * @param pipeline Pipeline to send messages through, null to wait for each acknowledgement
+         * @throws CommunicationException If a pipelined message cannot be sent
+         * @throws InterruptedException   If interrupted while waiting for room in the pipeline
+         */
+        protected void sendMessages(ClientService client, MessagePipeline pipeline) throws CommunicationException, InterruptedException {
+            String message = RandomStringUtils.randomAlphanumeric(loadSettings.getMessageSize());
+            long interval = loadSettings.getRate() > 0 ? TimeUnit.SECONDS.toNanos(1) / loadSettings.getRate() : 0;
+            long next = System.nanoTime();
+
+            int batch = pipeline == null ? Math.max(loadSettings.getBatch(), 1) : 1;
+            List<String> messages = Collections.nCopies(batch, message);
+
+            for (int i = 0; i < loadSettings.getMessages() && !Thread.currentThread().isInterrupted(); i += batch) {
+                int count = Math.min(batch, loadSettings.getMessages() - i);
+                if (interval > 0) {
+                    // Late messages are sent immediately, so the schedule does not drift with server latency
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    next += interval * count;
+                }
+
+                if (pipeline != null) {
+                    pipeline.submit(message).whenComplete((acknowledged, e) -> {
+                        if (e == null && acknowledged) {
+                            report.message();
+                        } else {
+                            report.error();
+                        }
+                    });
+                } else if (count > 1 ? client.sendMessages(messages.subList(0, count)) : client.sendMessage(message)) {
+                    report.messages(count);
+                } else {
+                    report.error();
+                }
+            }
+        }
+
+        protected void close(Socket socket) {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    log.debug("Cannot close connection {}", index, e);
+                }
+            }
+        }
+    }
+}
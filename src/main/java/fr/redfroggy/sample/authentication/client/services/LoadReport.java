@@ -0,0 +1,149 @@
+package fr.redfroggy.sample.authentication.client.services;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of a load generation
+ */
+public class LoadReport {
+
+    /**
+     * Handshake duration of each connection (nanoseconds), 0 if it failed
+     */
+    protected final long[] handshakes;
+
+    protected final AtomicLong messages = new AtomicLong();
+
+    protected final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Total duration (nanoseconds)
+     */
+    @Getter
+    @Setter
+    protected long duration;
+
+    /**
+     * Construct report
+     *
+     * @param connections Number of connections
+     */
+    public LoadReport(int connections) {
+        this.handshakes = new long[connections];
+    }
+
+    /**
+     * Record a successful handshake, each connection records its own
+     *
+     * @param connection Connection index
+     * @param duration   Handshake duration (nanoseconds)
+     */
+    public void handshake(int connection, long duration) {
+        handshakes[connection] = Math.max(duration, 1);
+    }
+
+    /**
+     * Record an acknowledged message
+     */
+    public void message() {
+        messages.incrementAndGet();
+    }
+
+    /**
+     * Record acknowledged messages
+     *
+     * @param count Number of messages
+     */
+    public void messages(int count) {
+        messages.addAndGet(count);
+    }
+
+    /**
+     * Record a failed handshake or message
+     */
+    public void error() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Get number of successful handshakes
+     *
+     * @return Handshakes count
+     */
+    public int getHandshakes() {
+        return successfulHandshakes().length;
+    }
+
+    /**
+     * Get number of acknowledged messages
+     *
+     * @return Messages count
+     */
+    public long getMessages() {
+        return messages.get();
+    }
+
+    /**
+     * Get number of errors
+     *
+     * @return Errors count
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Get handshake latency percentile (nearest rank)
+     *
+     * @param percentile Percentile, between 0 and 100
+     * @return Handshake duration (nanoseconds), 0 if no handshake succeeded
+     */
+    public long getHandshakePercentile(double percentile) {
+        long[] sorted = successfulHandshakes();
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+    }
+
+    /**
+     * Get message throughput over the whole run
+     *
+     * @return Acknowledged messages per second
+     */
+    public double getThroughput() {
+        return duration > 0 ? messages.get() * (double) TimeUnit.SECONDS.toNanos(1) / duration : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d handshakes (p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms), "
+                        + "%d messages in %.3f s (%.1f msg/s), %d errors",
+                getHandshakes(), handshakes.length,
+                millis(getHandshakePercentile(50)), millis(getHandshakePercentile(90)),
+                millis(getHandshakePercentile(99)), millis(getHandshakePercentile(100)),
+                getMessages(), duration / (double) TimeUnit.SECONDS.toNanos(1), getThroughput(), getErrors());
+    }
+
+    protected long[] successfulHandshakes() {
+        long[] successful = new long[handshakes.length];
+        int count = 0;
+        for (long handshake : handshakes) {
+            if (handshake > 0) {
+                successful[count++] = handshake;
+            }
+        }
+        return Arrays.copyOf(successful, count);
+    }
+
+    protected static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,232 @@
+package fr.redfroggy.sample.authentication.client.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.exceptions.TransmissionException;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.protocol.MessageChecksum;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline of messages on an authenticated connection.
+ * Up to window messages are sent without waiting for their acknowledgement. Acknowledgements are read
+ * by a dedicated thread, which completes the future of the message named by their sequence number after checking its CRC.
+ */
+@Slf4j
+public class MessagePipeline implements Closeable {
+
+    /**
+     * Maximum time waited by {@link #close()} for pending acknowledgements (seconds)
+     */
+    protected static final long CLOSE_TIMEOUT = 30;
+
+    protected final ClientService client;
+
+    /**
+     * Checksum of acknowledged messages, dedicated to the acknowledgement reader
+     */
+    protected final MessageChecksum checksum;
+
+    protected final Semaphore window;
+
+    /**
+     * Messages waiting for acknowledgement, by sequence number
+     */
+    protected final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Acknowledgements to read: one permit per sent message, plus one when closed to stop the reader
+     */
+    protected final Semaphore unread = new Semaphore(0);
+
+    protected final ExecutorService reader;
+
+    protected int sequence;
+
+    protected volatile CommunicationException failure;
+
+    protected boolean closed;
+
+    /**
+     * Construct pipeline and start reading acknowledgements
+     *
+     * @param client Authenticated client
+     * @param window Maximum number of messages waiting for acknowledgement
+     */
+    public MessagePipeline(ClientService client, int window) {
+        this.client = client;
+        this.checksum = new MessageChecksum(client.getChecksum().getAlgorithm());
+        this.window = new Semaphore(window);
+        this.reader = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("pipeline-%d").setDaemon(true).build());
+        this.reader.execute(new Runnable() {
+            @Override
+            public void run() {
+                readAcknowledgements();
+            }
+        });
+    }
+
+    /**
+     * Send a message, waiting for room in the window if needed
+     *
+     * @param msg Message content
+     * @return Future completed with true if server acknowledged message with a valid CRC, false if server
+     * returned an error, or failed with a {@link TransmissionException} if CRC is invalid
+     * @throws CommunicationException If message cannot be sent, or if pipeline failed
+     * @throws InterruptedException   If interrupted while waiting for room in the window
+     */
+    public synchronized CompletableFuture<Boolean> submit(String msg) throws CommunicationException, InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Pipeline is closed");
+        }
+        window.acquire();
+        checkFailure();
+
+        byte[] message = msg.getBytes();
+        Pending next = new Pending(sequence++, message);
+        pending.put(next.sequence, next);
+        try {
+            // Reader may have failed meanwhile, without seeing this message
+            checkFailure();
+            client.writeMessage(next.sequence, message);
+        } catch (CommunicationException e) {
+            fail(e);
+            throw e;
+        }
+        unread.release();
+        return next.future;
+    }
+
+    /**
+     * Wait for acknowledgements of all submitted messages, then stop reading.
+     * Messages still pending after {@link #CLOSE_TIMEOUT} seconds are failed.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        unread.release();
+        reader.shutdown();
+        try {
+            if (!reader.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+                fail(new CommunicationException(pending.size() + " messages not acknowledged within " + CLOSE_TIMEOUT + " s"));
+                reader.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read acknowledgements until pipeline is closed with no pending message, or failed
+     */
+    protected void readAcknowledgements() {
+        try {
+            while (failure == null) {
+                unread.acquire();
+                // Every sent message was acknowledged, last permit was released by close
+                if (pending.isEmpty()) {
+                    return;
+                }
+                byte[] acknowledgement;
+                try {
+                    acknowledgement = client.receiveAcknowledgement();
+                } catch (CommunicationException e) {
+                    fail(e);
+                    return;
+                }
+                window.release();
+                acknowledge(acknowledgement);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Complete the future of the message named by an acknowledgement, pipeline is failed if no message can be matched
+     *
+     * @param acknowledgement Acknowledgement command: RCQ or ERQ, followed by message sequence number
+     */
+    protected void acknowledge(byte[] acknowledgement) {
+        CommandSet.Instruction instruction = acknowledgement.length > 0
+                ? CommandSet.Instruction.get(acknowledgement[0]) : CommandSet.Instruction.UKW;
+        Pending message = null;
+        if (acknowledgement.length >= 1 + CommandSet.SEQUENCE_SIZE
+                && (instruction == CommandSet.Instruction.RCQ || instruction == CommandSet.Instruction.ERQ)) {
+            message = pending.remove(ByteBuffer.wrap(acknowledgement, 1, CommandSet.SEQUENCE_SIZE).getInt());
+        }
+        if (message == null) {
+            fail(new CommunicationException("Unexpected result " + instruction + ", not matching a pending message"));
+            return;
+        }
+
+        int offset = 1 + CommandSet.SEQUENCE_SIZE;
+        if (instruction == CommandSet.Instruction.ERQ) {
+            log.error("Server return error for message {} : {}", message.sequence,
+                    new String(acknowledgement, offset, acknowledgement.length - offset, StandardCharsets.UTF_8));
+            message.future.complete(false);
+        } else if (acknowledgement.length == offset + MessageChecksum.SIZE
+                && checksum.reset().update(message.message).matches(acknowledgement, offset)) {
+            log.debug("CRC valid for message {}", message.sequence);
+            message.future.complete(true);
+        } else {
+            message.future.completeExceptionally(new TransmissionException("Message CRC is invalid"));
+        }
+    }
+
+    /**
+     * Fail pipeline: pending and next messages are failed
+     *
+     * @param e Cause
+     */
+    protected void fail(CommunicationException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        for (Iterator<Pending> messages = pending.values().iterator(); messages.hasNext(); ) {
+            messages.next().future.completeExceptionally(failure);
+            messages.remove();
+        }
+        // Pipeline cannot be used anymore, unblock submitter waiting for room in the window
+        window.release(Short.MAX_VALUE);
+    }
+
+    protected void checkFailure() throws CommunicationException {
+        if (failure != null) {
+            throw new CommunicationException("Pipeline failed", failure);
+        }
+    }
+
+    /**
+     * Message waiting for acknowledgement
+     */
+    protected static class Pending {
+
+        protected final int sequence;
+
+        protected final byte[] message;
+
+        protected final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        protected Pending(int sequence, byte[] message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+}
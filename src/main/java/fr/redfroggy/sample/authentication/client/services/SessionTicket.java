@@ -0,0 +1,31 @@
+package fr.redfroggy.sample.authentication.client.services;
+
+import lombok.Getter;
+
+/**
+ * Session resumption ticket issued by server, with the session key it holds
+ */
+@Getter
+public class SessionTicket {
+
+    /**
+     * Ticket, opaque to client
+     */
+    protected final byte[] ticket;
+
+    /**
+     * Session key when ticket was issued
+     */
+    protected final byte[] key;
+
+    /**
+     * Construct ticket
+     *
+     * @param ticket Ticket
+     * @param key    Session key
+     */
+    public SessionTicket(byte[] ticket, byte[] key) {
+        this.ticket = ticket;
+        this.key = key;
+    }
+}
@@ -0,0 +1,22 @@
+package fr.redfroggy.sample.authentication.commons.metrics;
+
+/**
+ * Phases of the three pass authentication, timed separately by {@link HandshakeRecorder}
+ */
+public enum HandshakePhase {
+
+    /**
+     * Challenge generation (CLG)
+     */
+    CHALLENGE,
+
+    /**
+     * Client authentication (AUC), checking the client response to the challenge
+     */
+    CLIENT_AUTHENTICATION,
+
+    /**
+     * Server authentication (AUS), answering the client challenge and deriving the session key
+     */
+    SERVER_AUTHENTICATION
+}
@@ -0,0 +1,173 @@
+package fr.redfroggy.sample.authentication.commons.metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recorder of handshake phases latency, in HDR histograms (nanoseconds, 3 significant digits).
+ * Recording is wait-free and does not allocate: each phase has a {@link Recorder}, whose histograms are
+ * sized once and swapped when an interval is sampled, so concurrent sessions never wait for each other
+ * nor for the snapshot.
+ * Once started, interval histograms are periodically written to the "latency" logger in HdrHistogram log
+ * format (one tagged line per phase), which is routed to a rolling file, and summarized in the application log.
+ */
+@Slf4j
+public class HandshakeRecorder implements Closeable {
+
+    /**
+     * Recorder shared by communication services, tracking phases up to one minute
+     */
+    public static final HandshakeRecorder SHARED = new HandshakeRecorder(TimeUnit.MINUTES.toNanos(1));
+
+    /**
+     * Logger of interval histograms
+     */
+    protected static final Logger LATENCY_LOG = LoggerFactory.getLogger("latency");
+
+    /**
+     * Lowest discernible latency (1 µs)
+     */
+    protected static final long LOWEST_VALUE = 1000;
+
+    protected static final int SIGNIFICANT_DIGITS = 3;
+
+    protected final long highestValue;
+
+    protected final Map<HandshakePhase, Recorder> recorders = new EnumMap<>(HandshakePhase.class);
+
+    /**
+     * Last sampled interval of each phase, recycled by next sample
+     */
+    protected final Map<HandshakePhase, Histogram> intervals = new EnumMap<>(HandshakePhase.class);
+
+    protected final ByteArrayOutputStream logBuffer = new ByteArrayOutputStream();
+
+    protected final HistogramLogWriter logWriter = new HistogramLogWriter(new PrintStream(logBuffer));
+
+    protected ScheduledExecutorService scheduler;
+
+    /**
+     * Construct recorder
+     *
+     * @param highestValue Highest tracked latency (nanoseconds), longer phases are recorded with this value
+     */
+    public HandshakeRecorder(long highestValue) {
+        this.highestValue = highestValue;
+        for (HandshakePhase phase : HandshakePhase.values()) {
+            recorders.put(phase, new Recorder(LOWEST_VALUE, highestValue, SIGNIFICANT_DIGITS));
+        }
+    }
+
+    /**
+     * Record duration of a handshake phase
+     *
+     * @param phase    Handshake phase
+     * @param duration Duration (nanoseconds)
+     */
+    public void record(HandshakePhase phase, long duration) {
+        recorders.get(phase).recordValue(Math.min(Math.max(duration, 0), highestValue));
+    }
+
+    /**
+     * Start writing interval histograms periodically, does nothing if already started
+     *
+     * @param interval Snapshot interval
+     * @param unit     Interval unit
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("latency-log").setDaemon(true).build());
+
+        logWriter.outputLogFormatVersion();
+        logWriter.outputLegend();
+        flushLog();
+
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                snapshot();
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Sample interval histograms since previous snapshot, and write those having recorded values
+     */
+    public synchronized void snapshot() {
+        for (HandshakePhase phase : HandshakePhase.values()) {
+            Histogram recycled = intervals.get(phase);
+            Histogram interval = recycled == null ? recorders.get(phase).getIntervalHistogram()
+                    : recorders.get(phase).getIntervalHistogram(recycled);
+            intervals.put(phase, interval);
+
+            if (interval.getTotalCount() == 0) {
+                continue;
+            }
+            interval.setTag(phase.name());
+            logWriter.outputIntervalHistogram(interval);
+            flushLog();
+
+            log.info("Handshake {}: {} in {} ms, p50 {} µs, p90 {} µs, p99 {} µs, p99.9 {} µs, max {} µs", phase,
+                    interval.getTotalCount(), interval.getEndTimeStamp() - interval.getStartTimeStamp(),
+                    micros(interval.getValueAtPercentile(50)), micros(interval.getValueAtPercentile(90)),
+                    micros(interval.getValueAtPercentile(99)), micros(interval.getValueAtPercentile(99.9)),
+                    micros(interval.getMaxValue()));
+        }
+    }
+
+    /**
+     * Get latency histogram of a phase, sampled by last snapshot
+     *
+     * @param phase Handshake phase
+     * @return Last interval histogram, null if no snapshot was taken
+     */
+    public synchronized Histogram getInterval(HandshakePhase phase) {
+        return intervals.get(phase);
+    }
+
+    /**
+     * Stop periodic snapshots, recorded values not written yet are written by a last snapshot
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        snapshot();
+    }
+
+    /**
+     * Write pending log lines to the latency logger
+     */
+    protected void flushLog() {
+        for (String line : logBuffer.toString().split("\n")) {
+            if (!line.isEmpty()) {
+                LATENCY_LOG.info(line);
+            }
+        }
+        logBuffer.reset();
+    }
+
+    protected static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
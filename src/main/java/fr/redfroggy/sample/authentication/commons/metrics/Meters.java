@@ -0,0 +1,143 @@
+package fr.redfroggy.sample.authentication.commons.metrics;
+
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Meters of communications: commands, handshakes, transferred bytes and cipher operations.
+ * Meters are created once, recording only looks them up by instruction code or algorithm. Command meters are tagged
+ * with the instruction and its code, meters of custom instructions are created on their first command.
+ * Shared meters are registered in Micrometer global registry, they record nothing until a registry is added to it.
+ */
+public class Meters {
+
+    /**
+     * Meters shared by communication services
+     */
+    public static final Meters SHARED = new Meters(Metrics.globalRegistry);
+
+    protected final Counter bytesReceived;
+
+    protected final Counter bytesSent;
+
+    protected final MeterRegistry registry;
+
+    /**
+     * Command meters, indexed by unsigned instruction code
+     */
+    protected final AtomicReferenceArray<Timer> commands = new AtomicReferenceArray<>(256);
+
+    protected final AtomicReferenceArray<Counter> commandErrors = new AtomicReferenceArray<>(256);
+
+    protected final Map<Algorithm, Timer> handshakes = new EnumMap<>(Algorithm.class);
+
+    protected final Map<Algorithm, Timer> encodes = new EnumMap<>(Algorithm.class);
+
+    protected final Map<Algorithm, Timer> decodes = new EnumMap<>(Algorithm.class);
+
+    /**
+     * Construct meters
+     *
+     * @param registry Registry of meters
+     */
+    public Meters(MeterRegistry registry) {
+        this.registry = registry;
+        bytesReceived = Counter.builder("communication.bytes").tag("direction", "received").baseUnit("bytes").register(registry);
+        bytesSent = Counter.builder("communication.bytes").tag("direction", "sent").baseUnit("bytes").register(registry);
+
+        for (CommandSet.Instruction instruction : CommandSet.Instruction.values()) {
+            registerCommand(instruction.getCode());
+        }
+
+        for (Algorithm algorithm : Algorithm.values()) {
+            handshakes.put(algorithm, Timer.builder("handshakes").tag("algorithm", algorithm.name())
+                    .publishPercentiles(0.5, 0.9, 0.99).register(registry));
+            encodes.put(algorithm, Timer.builder("cipher.operations").tag("algorithm", algorithm.name())
+                    .tag("operation", "encode").register(registry));
+            decodes.put(algorithm, Timer.builder("cipher.operations").tag("algorithm", algorithm.name())
+                    .tag("operation", "decode").register(registry));
+        }
+    }
+
+    /**
+     * Record received bytes
+     *
+     * @param bytes Number of bytes (frame headers included)
+     */
+    public void received(long bytes) {
+        bytesReceived.increment(bytes);
+    }
+
+    /**
+     * Record sent bytes
+     *
+     * @param bytes Number of bytes (frame headers included)
+     */
+    public void sent(long bytes) {
+        bytesSent.increment(bytes);
+    }
+
+    /**
+     * Record an executed command
+     *
+     * @param code     Instruction code
+     * @param duration Execution duration (in nanoseconds)
+     * @param error    True if command was answered with an error
+     */
+    public void command(byte code, long duration, boolean error) {
+        int index = code & 0xFF;
+        if (commands.get(index) == null) {
+            registerCommand(code);
+        }
+        commands.get(index).record(duration, TimeUnit.NANOSECONDS);
+        if (error) {
+            commandErrors.get(index).increment();
+        }
+    }
+
+    /**
+     * Create meters of an instruction code, registry returns the same meters if they already exist
+     *
+     * @param code Instruction code
+     */
+    private void registerCommand(byte code) {
+        int index = code & 0xFF;
+        String instruction = CommandSet.Instruction.get(code).name();
+        String hex = String.format("%02X", index);
+        // Error counter first, a timer signals both meters exist
+        commandErrors.set(index, Counter.builder("server.commands.errors").tag("instruction", instruction).tag("code", hex)
+                .register(registry));
+        commands.set(index, Timer.builder("server.commands").tag("instruction", instruction).tag("code", hex)
+                .publishPercentiles(0.5, 0.9, 0.99).register(registry));
+    }
+
+    /**
+     * Record a handshake (authentication, resumption or key exchange)
+     *
+     * @param algorithm Algorithm of the handshake
+     * @param duration  Handshake duration (in nanoseconds)
+     */
+    public void handshake(Algorithm algorithm, long duration) {
+        handshakes.get(algorithm).record(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record a cipher operation
+     *
+     * @param algorithm Algorithm
+     * @param encode    True for encryption, false for decryption
+     * @param duration  Operation duration (in nanoseconds)
+     */
+    public void cipher(Algorithm algorithm, boolean encode, long duration) {
+        (encode ? encodes : decodes).get(algorithm).record(duration, TimeUnit.NANOSECONDS);
+    }
+}
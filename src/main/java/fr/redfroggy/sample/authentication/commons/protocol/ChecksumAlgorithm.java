@@ -0,0 +1,59 @@
+package fr.redfroggy.sample.authentication.commons.protocol;
+
+/**
+ * Checksum algorithms of message acknowledgements, negotiated by a CKS command.
+ * CRC32 is used until another algorithm is negotiated.
+ */
+public enum ChecksumAlgorithm {
+
+    /**
+     * CRC32 (ISO HDLC), default
+     */
+    CRC32((byte) 0x01),
+
+    /**
+     * CRC32C (Castagnoli), computed with dedicated processor instructions where available
+     */
+    CRC32C((byte) 0x02);
+
+    /**
+     * Algorithms indexed by unsigned code, null for unknown codes
+     */
+    private static final ChecksumAlgorithm[] BY_CODE = new ChecksumAlgorithm[256];
+
+    static {
+        for (ChecksumAlgorithm algorithm : values()) {
+            BY_CODE[algorithm.code & 0xFF] = algorithm;
+        }
+    }
+
+    private final byte code;
+
+    /**
+     * Construct algorithm
+     *
+     * @param code Algorithm code, sent in CKS command
+     */
+    ChecksumAlgorithm(byte code) {
+        this.code = code;
+    }
+
+    /**
+     * Algorithm code
+     *
+     * @return Algorithm code
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * Retrieve an algorithm from its code
+     *
+     * @param code Algorithm code
+     * @return Algorithm, null if code is unknown
+     */
+    public static ChecksumAlgorithm get(byte code) {
+        return BY_CODE[code & 0xFF];
+    }
+}
@@ -1,10 +1,46 @@
 package fr.redfroggy.sample.authentication.commons.protocol;
 
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  * Command set for client and server communication
  */
 public class CommandSet {
 
+    /**
+     * Size of frame header (command length, 4 bytes big endian)
+     */
+    public static final int HEADER_SIZE = 4;
+
+    /**
+     * Default maximum length of a framed command
+     */
+    public static final int MAX_COMMAND_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Initial size of a command buffer, grown as command bytes arrive
+     */
+    public static final int RECEIVE_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Size of sequence number of pipelined messages (4 bytes big endian)
+     */
+    public static final int SEQUENCE_SIZE = 4;
+
+    /**
+     * Size of plain data ciphered in a message stream chunk
+     */
+    public static final int STREAM_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Error detail of a server rejecting a client beyond its admission limits
+     */
+    public static final String BUSY = "busy";
+
     /**
      * Instructions
      */
@@ -14,12 +50,36 @@ public class CommandSet {
         AUC((byte) 0x12),
         CLG((byte) 0x13),
         PUB((byte) 0x14),
+        TKT((byte) 0x15),
+        RSM((byte) 0x16),
+        KEY((byte) 0x17),
+        CKS((byte) 0x18),
         MSG((byte) 0x20),
+        MSQ((byte) 0x21),
+        MSB((byte) 0x22),
+        MSS((byte) 0x23),
+        MSC((byte) 0x24),
+        MSE((byte) 0x25),
+        FIL((byte) 0x26),
         RCV((byte) 0x30),
+        RCQ((byte) 0x31),
         SUC((byte) 0xE0),
         ERR((byte) 0xF0),
+        ERQ((byte) 0xF1),
         STP((byte) 0xFF);
 
+        /**
+         * Instructions indexed by unsigned code, unknown codes are mapped to UKW
+         */
+        private static final Instruction[] BY_CODE = new Instruction[256];
+
+        static {
+            Arrays.fill(BY_CODE, UKW);
+            for (Instruction ins : values()) {
+                BY_CODE[ins.code & 0xFF] = ins;
+            }
+        }
+
         private byte code;
 
         /**
@@ -47,12 +107,7 @@ public class CommandSet {
          * @return Instruction
          */
         public static Instruction get(byte code) {
-            for (Instruction ins : Instruction.values()) {
-                if (code == ins.getCode()) {
-                    return ins;
-                }
-            }
-            return UKW;
+            return BY_CODE[code & 0xFF];
         }
     }
 
@@ -126,6 +181,46 @@ public class CommandSet {
         return cmd;
     }
 
+    /**
+     * Get receive command, checksum is written into the command without intermediate copy
+     *
+     * @param checksum Decoded message checksum
+     * @return Receive command
+     */
+    public static byte[] receive(MessageChecksum checksum) {
+        byte[] cmd = new byte[1 + MessageChecksum.SIZE];
+        cmd[0] = Instruction.RCV.getCode();
+        checksum.write(cmd, 1);
+        return cmd;
+    }
+
+    /**
+     * Get sequenced receive command, acknowledging a pipelined message
+     *
+     * @param sequence Sequence number of acknowledged message
+     * @param crc      Decoded message CRC32
+     * @return Sequenced receive command
+     */
+    public static byte[] receive(int sequence, byte[] crc) {
+        byte[] cmd = new byte[1 + SEQUENCE_SIZE + crc.length];
+        ByteBuffer.wrap(cmd).put(Instruction.RCQ.getCode()).putInt(sequence).put(crc);
+        return cmd;
+    }
+
+    /**
+     * Get sequenced receive command, acknowledging a pipelined message
+     *
+     * @param sequence Sequence number of acknowledged message
+     * @param checksum Decoded message checksum
+     * @return Sequenced receive command
+     */
+    public static byte[] receive(int sequence, MessageChecksum checksum) {
+        byte[] cmd = new byte[1 + SEQUENCE_SIZE + MessageChecksum.SIZE];
+        ByteBuffer.wrap(cmd).put(Instruction.RCQ.getCode()).putInt(sequence);
+        checksum.write(cmd, 1 + SEQUENCE_SIZE);
+        return cmd;
+    }
+
     /**
      * Get success command
      *
@@ -135,6 +230,19 @@ public class CommandSet {
         return new byte[]{Instruction.SUC.getCode()};
     }
 
+    /**
+     * Get success command with data
+     *
+     * @param data Returned data
+     * @return Success command
+     */
+    public static byte[] success(byte[] data) {
+        byte[] cmd = new byte[data.length + 1];
+        cmd[0] = Instruction.SUC.getCode();
+        System.arraycopy(data, 0, cmd, 1, data.length);
+        return cmd;
+    }
+
     /**
      * Get error command
      *
@@ -148,6 +256,40 @@ public class CommandSet {
         return cmd;
     }
 
+    /**
+     * Get sequenced error command, answering a pipelined message
+     *
+     * @param sequence Sequence number of rejected message
+     * @param detail   Error detail
+     * @return Sequenced error command
+     */
+    public static byte[] error(int sequence, String detail) {
+        byte[] text = detail.getBytes(StandardCharsets.UTF_8);
+        byte[] cmd = new byte[1 + SEQUENCE_SIZE + text.length];
+        ByteBuffer.wrap(cmd).put(Instruction.ERQ.getCode()).putInt(sequence).put(text);
+        return cmd;
+    }
+
+    /**
+     * Check if a response is an error, sequenced or not
+     *
+     * @param response Response
+     * @return True if response is an error command
+     */
+    public static boolean isError(byte[] response) {
+        return response != null && response.length > 0
+                && (response[0] == Instruction.ERR.getCode() || response[0] == Instruction.ERQ.getCode());
+    }
+
+    /**
+     * Get error command of a server beyond its admission limits
+     *
+     * @return Busy error command
+     */
+    public static byte[] busy() {
+        return error(BUSY);
+    }
+
     /**
      * Exchange server and client public keys (in RSA mode)
      *
@@ -160,4 +302,90 @@ public class CommandSet {
         System.arraycopy(publicKey, 0, cmd, 1, publicKey.length);
         return cmd;
     }
+
+    /**
+     * Frame a command: command length header followed by command bytes
+     *
+     * @param command Command to frame
+     * @return Framed command
+     */
+    public static byte[] frame(byte[] command) {
+        byte[] frame = new byte[HEADER_SIZE + command.length];
+        writeHeader(frame, 0, command.length);
+        System.arraycopy(command, 0, frame, HEADER_SIZE, command.length);
+        return frame;
+    }
+
+    /**
+     * Size of a framed command
+     *
+     * @param payloadLength Length of command payload (without instruction code)
+     * @return Frame size
+     */
+    public static int frameSize(int payloadLength) {
+        return HEADER_SIZE + 1 + payloadLength;
+    }
+
+    /**
+     * Encode a framed command into a buffer, without intermediate array
+     *
+     * @param buffer      Destination buffer, written from its position
+     * @param instruction Command instruction
+     * @param payload     Command payload
+     * @return Destination buffer
+     */
+    public static ByteBuffer encode(ByteBuffer buffer, Instruction instruction, byte[] payload) {
+        return buffer.putInt(payload.length + 1).put(instruction.getCode()).put(payload);
+    }
+
+    /**
+     * Encode a built command as a frame into a buffer
+     *
+     * @param buffer  Destination buffer, written from its position
+     * @param command Command to frame
+     * @return Destination buffer
+     */
+    public static ByteBuffer encode(ByteBuffer buffer, byte[] command) {
+        return buffer.putInt(command.length).put(command);
+    }
+
+    /**
+     * Write frame header
+     *
+     * @param buffer Destination buffer
+     * @param offset Header offset in buffer
+     * @param length Command length
+     */
+    public static void writeHeader(byte[] buffer, int offset, int length) {
+        buffer[offset] = (byte) (length >>> 24);
+        buffer[offset + 1] = (byte) (length >>> 16);
+        buffer[offset + 2] = (byte) (length >>> 8);
+        buffer[offset + 3] = (byte) length;
+    }
+
+    /**
+     * Check a command length read from a frame header
+     *
+     * @param length Command length
+     * @return Command length
+     * @throws CommunicationException If length is out of bounds
+     */
+    public static int checkLength(int length) throws CommunicationException {
+        return checkLength(length, MAX_COMMAND_SIZE);
+    }
+
+    /**
+     * Check a command length read from a frame header
+     *
+     * @param length    Command length
+     * @param maxLength Maximum command length
+     * @return Command length
+     * @throws CommunicationException If length is out of bounds
+     */
+    public static int checkLength(int length, int maxLength) throws CommunicationException {
+        if (length < 0 || length > maxLength) {
+            throw new CommunicationException("Invalid frame length: " + length);
+        }
+        return length;
+    }
 }
@@ -0,0 +1,109 @@
+package fr.redfroggy.sample.authentication.commons.protocol;
+
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.utils.BufferPool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental decoder of framed commands, for transports receiving bytes by chunks.
+ * Frames can be split or coalesced in any way between chunks.
+ * Commands are decoded into pooled buffers, to be released by the caller once processed. A command buffer grows
+ * as its bytes arrive, so an announced length does not allocate memory before the bytes are received.
+ */
+public class FrameDecoder {
+
+    protected final BufferPool bufferPool;
+
+    protected int length;
+
+    protected int headerRead;
+
+    protected ByteBuffer command;
+
+    /**
+     * Construct decoder using shared buffer pool
+     */
+    public FrameDecoder() {
+        this(BufferPool.SHARED);
+    }
+
+    /**
+     * Construct decoder
+     *
+     * @param bufferPool Pool providing command buffers
+     */
+    public FrameDecoder(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Decode next command from received bytes, up to the default maximum command length
+     *
+     * @param input Received bytes, consumed up to the end of the decoded command
+     * @return Decoded command between buffer position and limit, or null if more bytes are required
+     * @throws CommunicationException If frame header is invalid
+     */
+    public ByteBuffer decode(ByteBuffer input) throws CommunicationException {
+        return decode(input, CommandSet.MAX_COMMAND_SIZE);
+    }
+
+    /**
+     * Decode next command from received bytes
+     *
+     * @param input     Received bytes, consumed up to the end of the decoded command
+     * @param maxLength Maximum command length, checked when frame header is complete
+     * @return Decoded command between buffer position and limit, or null if more bytes are required
+     * @throws CommunicationException If frame header is invalid
+     */
+    public ByteBuffer decode(ByteBuffer input, int maxLength) throws CommunicationException {
+
+        while (headerRead < CommandSet.HEADER_SIZE) {
+            if (!input.hasRemaining()) {
+                return null;
+            }
+            length = (length << 8) | (input.get() & 0xFF);
+            headerRead++;
+            if (headerRead == CommandSet.HEADER_SIZE) {
+                command = bufferPool.acquire(Math.min(CommandSet.checkLength(length, maxLength), CommandSet.RECEIVE_CHUNK_SIZE));
+            }
+        }
+
+        while (command.position() < length) {
+            if (!input.hasRemaining()) {
+                return null;
+            }
+            if (!command.hasRemaining()) {
+                command = bufferPool.grow(command, Math.min(length, command.position() * 2));
+            }
+            int count = Math.min(input.remaining(), command.remaining());
+            input.get(command.array(), command.arrayOffset() + command.position(), count);
+            command.position(command.position() + count);
+        }
+
+        ByteBuffer decoded = command;
+        decoded.flip();
+        command = null;
+        reset();
+        return decoded;
+    }
+
+    /**
+     * Check if a frame is partially decoded
+     *
+     * @return True if bytes of an incomplete frame are pending
+     */
+    public boolean isPending() {
+        return headerRead > 0;
+    }
+
+    /**
+     * Reset decoder state, releasing buffer of a partially decoded command
+     */
+    public void reset() {
+        bufferPool.release(command);
+        length = 0;
+        headerRead = 0;
+        command = null;
+    }
+}
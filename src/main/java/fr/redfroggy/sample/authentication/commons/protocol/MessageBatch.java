@@ -0,0 +1,88 @@
+package fr.redfroggy.sample.authentication.commons.protocol;
+
+import fr.redfroggy.sample.authentication.commons.exceptions.TransmissionException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain content of a batch command, ciphered as a whole:
+ * messages count (2 bytes), then each message length (2 bytes) followed by its bytes, then an end mark.
+ * The end mark protects the last message against removal of trailing zero bytes when padding is trimmed.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public abstract class MessageBatch {
+
+    /**
+     * Maximum number of messages in a batch
+     */
+    public static final int MAX_MESSAGES = 0xFFFF;
+
+    /**
+     * Maximum length of a message in a batch
+     */
+    public static final int MAX_MESSAGE_SIZE = 0xFFFF;
+
+    /**
+     * End of batch mark
+     */
+    protected static final byte END = (byte) 0x80;
+
+    /**
+     * Build batch content
+     *
+     * @param messages Messages
+     * @return Batch content
+     */
+    public static byte[] encode(List<byte[]> messages) {
+        if (messages.size() > MAX_MESSAGES) {
+            throw new IllegalArgumentException("Too many messages in batch: " + messages.size());
+        }
+
+        int size = 2 + 1;
+        for (byte[] message : messages) {
+            if (message.length > MAX_MESSAGE_SIZE) {
+                throw new IllegalArgumentException("Message too long for batch: " + message.length);
+            }
+            size += 2 + message.length;
+        }
+
+        ByteBuffer batch = ByteBuffer.allocate(size);
+        batch.putShort((short) messages.size());
+        for (byte[] message : messages) {
+            batch.putShort((short) message.length).put(message);
+        }
+        batch.put(END);
+        return batch.array();
+    }
+
+    /**
+     * Read batch content
+     *
+     * @param batch Batch content
+     * @return Messages
+     * @throws TransmissionException If batch content is malformed
+     */
+    public static List<byte[]> decode(byte[] batch) throws TransmissionException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            int count = buffer.getShort() & 0xFFFF;
+            List<byte[]> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] message = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(message);
+                messages.add(message);
+            }
+            if (buffer.get() != END || buffer.hasRemaining()) {
+                throw new TransmissionException("Batch end mark is missing");
+            }
+            return messages;
+        } catch (BufferUnderflowException e) {
+            throw new TransmissionException("Batch is truncated", e);
+        }
+    }
+}
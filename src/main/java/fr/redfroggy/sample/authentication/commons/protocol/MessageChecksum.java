@@ -0,0 +1,127 @@
+package fr.redfroggy.sample.authentication.commons.protocol;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Checksum of acknowledged messages, computed incrementally over arrays or buffer slices.
+ * Its value is written into caller buffers as acknowledgements expect it: complemented, least significant byte first.
+ * An instance is reset and reused by the messages of a connection, it is not thread safe.
+ */
+public class MessageChecksum {
+
+    /**
+     * Size of a checksum in acknowledgements
+     */
+    public static final int SIZE = 4;
+
+    @Getter
+    protected final ChecksumAlgorithm algorithm;
+
+    protected final Checksum checksum;
+
+    /**
+     * Construct checksum
+     *
+     * @param algorithm Checksum algorithm
+     */
+    public MessageChecksum(ChecksumAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        this.checksum = ChecksumAlgorithm.CRC32C.equals(algorithm) ? new CRC32C() : new CRC32();
+    }
+
+    /**
+     * Reset checksum, to compute the checksum of another message
+     *
+     * @return This checksum
+     */
+    public MessageChecksum reset() {
+        checksum.reset();
+        return this;
+    }
+
+    /**
+     * Update checksum with bytes of a message
+     *
+     * @param data Message bytes
+     * @return This checksum
+     */
+    public MessageChecksum update(byte[] data) {
+        checksum.update(data, 0, data.length);
+        return this;
+    }
+
+    /**
+     * Update checksum with bytes of a message
+     *
+     * @param data   Message bytes
+     * @param offset Offset of bytes
+     * @param length Number of bytes
+     * @return This checksum
+     */
+    public MessageChecksum update(byte[] data, int offset, int length) {
+        checksum.update(data, offset, length);
+        return this;
+    }
+
+    /**
+     * Update checksum with bytes of a message, heap or direct buffer (mapped file)
+     *
+     * @param data Message bytes between buffer position and limit, buffer position is moved to its limit
+     * @return This checksum
+     */
+    public MessageChecksum update(ByteBuffer data) {
+        checksum.update(data);
+        return this;
+    }
+
+    /**
+     * Write checksum value
+     *
+     * @param destination Destination array
+     * @param offset      Offset of checksum in destination, SIZE bytes are written
+     */
+    public void write(byte[] destination, int offset) {
+        long value = ~checksum.getValue();
+        for (int i = 0; i < SIZE; i++) {
+            destination[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Get checksum value
+     *
+     * @return Checksum bytes
+     */
+    public byte[] get() {
+        byte[] value = new byte[SIZE];
+        write(value, 0);
+        return value;
+    }
+
+    /**
+     * Check checksum value, without copy
+     *
+     * @param source Source array
+     * @param offset Offset of checksum in source
+     * @return True if SIZE bytes at offset are equal to checksum value
+     */
+    public boolean matches(byte[] source, int offset) {
+        if (source.length < offset + SIZE) {
+            return false;
+        }
+        long value = ~checksum.getValue();
+        for (int i = 0; i < SIZE; i++) {
+            if (source[offset + i] != (byte) value) {
+                return false;
+            }
+            value >>>= 8;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Provides initialized ciphers, cached per thread and algorithm.
+ * A cipher is only initialized again when its thread uses it with another key or mode,
+ * so concurrent sessions share neither cipher instances nor locks, and provider lookups
+ * of {@link Cipher#getInstance(String)} happen once per thread and algorithm.
+ */
+public class CipherProvider {
+
+    /**
+     * Provider shared by cipher services
+     */
+    public static final CipherProvider SHARED = new CipherProvider();
+
+    private static final Map<Algorithm, IvParameterSpec> ZERO_IV = new EnumMap<>(Algorithm.class);
+
+    static {
+        for (Algorithm algorithm : Algorithm.values()) {
+            if (algorithm.getBlocSize() > 0) {
+                ZERO_IV.put(algorithm, new IvParameterSpec(new byte[algorithm.getBlocSize()]));
+            }
+        }
+    }
+
+    protected final ThreadLocal<Map<Algorithm, CachedCipher>> ciphers = new ThreadLocal<Map<Algorithm, CachedCipher>>() {
+        @Override
+        protected Map<Algorithm, CachedCipher> initialValue() {
+            return new EnumMap<>(Algorithm.class);
+        }
+    };
+
+    /**
+     * Zero init vector of an algorithm (immutable, shared)
+     *
+     * @param algorithm Algorithm
+     * @return Zero init vector, null for algorithms without bloc
+     */
+    public static IvParameterSpec zeroIV(Algorithm algorithm) {
+        return ZERO_IV.get(algorithm);
+    }
+
+    /**
+     * Get cipher of current thread, initialized for an operation.
+     * Returned cipher must be used by current thread only, and for a single operation.
+     *
+     * @param algorithm Algorithm
+     * @param mode      Cipher mode (encrypt or decrypt)
+     * @param key       Key
+     * @param params    Algorithm parameters (may be null)
+     * @return Initialized cipher
+     * @throws GeneralSecurityException If cipher cannot be created or initialized
+     */
+    public Cipher get(Algorithm algorithm, int mode, Key key, AlgorithmParameterSpec params) throws GeneralSecurityException {
+        Map<Algorithm, CachedCipher> threadCiphers = ciphers.get();
+        CachedCipher cached = threadCiphers.get(algorithm);
+        if (cached == null) {
+            cached = new CachedCipher(Cipher.getInstance(algorithm.getCipherAlgorithm()));
+            threadCiphers.put(algorithm, cached);
+        }
+
+        // A cipher gets back to its initialized state after doFinal, init is required only on key or mode change
+        if (cached.key != key || cached.mode != mode || cached.params != params) {
+            cached.key = null;
+            if (params == null) {
+                cached.cipher.init(mode, key);
+            } else {
+                cached.cipher.init(mode, key, params);
+            }
+            cached.key = key;
+            cached.mode = mode;
+            cached.params = params;
+        }
+        return cached.cipher;
+    }
+
+    /**
+     * Force initialization of current thread cipher on next use (after a failed operation)
+     *
+     * @param algorithm Algorithm
+     */
+    public void invalidate(Algorithm algorithm) {
+        CachedCipher cached = ciphers.get().get(algorithm);
+        if (cached != null) {
+            cached.key = null;
+        }
+    }
+
+    /**
+     * Cipher with its current initialization
+     */
+    protected static class CachedCipher {
+
+        protected final Cipher cipher;
+
+        protected Key key;
+
+        protected int mode;
+
+        protected AlgorithmParameterSpec params;
+
+        protected CachedCipher(Cipher cipher) {
+            this.cipher = cipher;
+        }
+    }
+}
@@ -1,40 +1,71 @@
 package fr.redfroggy.sample.authentication.commons.security;
 
 import com.google.common.primitives.Bytes;
+import com.google.common.util.concurrent.Futures;
+import fr.redfroggy.sample.authentication.commons.metrics.Meters;
 import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
 import lombok.Getter;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import lombok.Setter;
 
 import javax.crypto.Cipher;
-import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
 import java.security.*;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.concurrent.Future;
 
 /**
  * Cipher service use for cryptographic process
  */
-@Slf4j
 public class CipherService {
 
-    @Autowired
-    @Getter
+    /**
+     * Key pair, for RSA algorithm only
+     */
     protected KeyPair keyPair;
 
+    /**
+     * Key pair being loaded or generated, until first use
+     */
+    protected Future<KeyPair> pendingKeyPair;
+
+    /**
+     * Peer public key, for RSA algorithm only
+     */
+    @Getter
     protected PublicKey publicKey;
 
     @Getter
     protected Algorithm algorithm;
 
-    protected Random randomizer = new Random();
+    /**
+     * Symmetric algorithm of session traffic once a session key is transported with RSA (hybrid mode),
+     * null for traffic ciphered with RSA
+     */
+    @Getter
+    @Setter
+    protected Algorithm sessionAlgorithm;
+
+    /**
+     * Source of random values (challenges and random sequences)
+     */
+    @Setter
+    protected RandomSource randomSource = RandomSource.SHARED;
+
+    protected CipherProvider cipherProvider = CipherProvider.SHARED;
+
+    protected PublicKeyCache publicKeyCache = PublicKeyCache.SHARED;
 
-    protected Cipher cipher;
+    protected Meters meters = Meters.SHARED;
 
+    /**
+     * Current symmetric key (initial key, or session key once authenticated)
+     */
+    @Getter
     protected byte[] key;
 
+    protected SecretKeySpec secretKey;
+
     protected boolean resetIV = true;
 
     /**
@@ -46,25 +77,78 @@ public class CipherService {
     public CipherService(Algorithm algorithm, byte[] key) {
         this.algorithm = algorithm;
 
-        try {
-            if (!Algorithm.RSA.equals(algorithm)) {
-                setKey(key);
-            }
-        } catch(GeneralSecurityException e) {
-            log.error("Cannot initialise key", e);
+        // Not through setKey, which subclasses may override
+        if (!Algorithm.RSA.equals(algorithm)) {
+            this.key = symmetricKey(algorithm, key);
+            this.secretKey = new SecretKeySpec(this.key, algorithm.getKeyAlgorithm());
         }
     }
 
+    /**
+     * Create a new cipher sharing algorithm, initial key and key pair with this one.
+     * Each session must use its own cipher, since session key and peer public key are stored in it.
+     *
+     * @return New cipher
+     */
+    public CipherService copy() {
+        CipherService copy = new CipherService(algorithm, key);
+        copy.keyPair = keyPair;
+        copy.pendingKeyPair = pendingKeyPair;
+        copy.randomSource = randomSource;
+        copy.sessionAlgorithm = sessionAlgorithm;
+        return copy;
+    }
+
+    /**
+     * Get key pair, waiting for it if it is still being loaded or generated
+     *
+     * @return Key pair, null for symmetric algorithms
+     */
+    public KeyPair getKeyPair() {
+        if (keyPair == null && pendingKeyPair != null) {
+            keyPair = Futures.getUnchecked(pendingKeyPair);
+        }
+        return keyPair;
+    }
+
+    /**
+     * Set key pair, possibly not available yet (RSA algorithm)
+     *
+     * @param keyPair Future key pair
+     */
+    public void setKeyPair(Future<KeyPair> keyPair) {
+        this.keyPair = null;
+        this.pendingKeyPair = keyPair;
+    }
+
     /**
      * Get random value with algorithm bloc size
      *
      * @return Random value
      */
     public byte[] random() {
+        return randomSource.next(algorithm.getBlocSize());
+    }
 
-        byte[] rndA = new byte[algorithm.getBlocSize()];
-        randomizer.nextBytes(rndA);
-        return rndA;
+    /**
+     * Get random value
+     *
+     * @param size Size of random value
+     * @return Random value
+     */
+    public byte[] random(int size) {
+        return randomSource.next(size);
+    }
+
+    /**
+     * Switch from RSA to session algorithm (hybrid mode), session key must then be set.
+     * Key pair and peer public key are kept.
+     */
+    public void useSessionAlgorithm() {
+        algorithm = sessionAlgorithm;
+        key = null;
+        secretKey = null;
+        resetIV();
     }
 
     /**
@@ -92,6 +176,37 @@ public class CipherService {
         return BytesUtils.unpad(decoded);
     }
 
+    /**
+     * Decode data slice with current key and algorithm, without copying it
+     *
+     * @param data Data to decode, from its position to its limit (buffer must be backed by an array)
+     * @return Decoded data
+     * @throws GeneralSecurityException Is an error occurred during cryptographic process
+     */
+    public byte[] decode(ByteBuffer data) throws GeneralSecurityException {
+        byte[] decoded = cipher(data.array(), data.arrayOffset() + data.position(), data.remaining(), Cipher.DECRYPT_MODE);
+        data.position(data.limit());
+        return BytesUtils.unpad(decoded);
+    }
+
+    /**
+     * Create a cipher dedicated to a message stream, initialized with current key and zero init vector.
+     * A stream is ciphered across several commands, possibly interleaved with other sessions on the same thread,
+     * so its cipher is never shared.
+     *
+     * @param mode Cipher mode (encrypt or decrypt)
+     * @return Initialized cipher, data must be given by bloc size multiples except at end of stream
+     * @throws GeneralSecurityException If algorithm has no bloc (RSA) or cipher cannot be initialized
+     */
+    public Cipher streamCipher(int mode) throws GeneralSecurityException {
+        if (algorithm.getBlocSize() == 0) {
+            throw new NoSuchAlgorithmException("Streaming not available for " + algorithm);
+        }
+        Cipher cipher = Cipher.getInstance(algorithm.getCipherAlgorithm());
+        cipher.init(mode, secretKey, CipherProvider.zeroIV(algorithm));
+        return cipher;
+    }
+
     /**
      * Reset init vector
      */
@@ -108,19 +223,44 @@ public class CipherService {
      * @throws GeneralSecurityException Is an error occurred during cryptographic process
      */
     protected byte[] cipher(byte[] data, int type) throws GeneralSecurityException {
+        return cipher(data, 0, data.length, type);
+    }
+
+    /**
+     * Process cryptographic operation on a part of an array
+     *
+     * @param data   Data to process
+     * @param offset Offset of data to process
+     * @param length Length of data to process
+     * @param type   Type of process (Encode or Decode)
+     * @return Proceed data
+     * @throws GeneralSecurityException Is an error occurred during cryptographic process
+     */
+    protected byte[] cipher(byte[] data, int offset, int length, int type) throws GeneralSecurityException {
 
-        if (cipher == null) {
-            cipher = Cipher.getInstance(algorithm.getCipherAlgorithm());
+        if (resetIV) {
+            cipherProvider.invalidate(algorithm);
+            resetIV = false;
         }
+
+        Cipher cipher;
         if (Algorithm.RSA.equals(algorithm) && Cipher.DECRYPT_MODE == type) {
-            cipher.init(type, keyPair.getPrivate());
+            cipher = cipherProvider.get(algorithm, type, getKeyPair().getPrivate(), null);
         } else if (Algorithm.RSA.equals(algorithm) && Cipher.ENCRYPT_MODE == type) {
-            cipher.init(type, publicKey);
-        } else if (resetIV) {
-            cipher.init(type, new SecretKeySpec(key, algorithm.getKeyAlgorithm()), new IvParameterSpec(new byte[algorithm.getBlocSize()]));
+            cipher = cipherProvider.get(algorithm, type, publicKey, null);
+        } else {
+            cipher = cipherProvider.get(algorithm, type, secretKey, CipherProvider.zeroIV(algorithm));
         }
 
-        return cipher.doFinal(data);
+        long start = System.nanoTime();
+        try {
+            byte[] result = cipher.doFinal(data, offset, length);
+            meters.cipher(algorithm, Cipher.ENCRYPT_MODE == type, System.nanoTime() - start);
+            return result;
+        } catch (GeneralSecurityException e) {
+            cipherProvider.invalidate(algorithm);
+            throw e;
+        }
     }
 
     /**
@@ -132,17 +272,27 @@ public class CipherService {
     public void setKey(byte[] newKey) throws GeneralSecurityException {
 
         if (Algorithm.RSA.equals(algorithm)) {
-            publicKey = KeyFactory.getInstance(algorithm.getKeyAlgorithm()).generatePublic(new X509EncodedKeySpec(newKey));
+            publicKey = publicKeyCache.get(newKey);
         } else {
             resetIV();
+            key = symmetricKey(algorithm, newKey);
+            secretKey = new SecretKeySpec(key, algorithm.getKeyAlgorithm());
+        }
+    }
 
-            if (algorithm.equals(Algorithm.DES) && newKey.length == 8) {
-                key = Bytes.concat(newKey, newKey, newKey);
-            } else if ((algorithm.equals(Algorithm.DES) || algorithm.equals(Algorithm.TDES)) && newKey.length == 16) {
-                key = Bytes.concat(newKey, Arrays.copyOf(newKey, 8));
-            } else {
-                key = newKey;
-            }
+    /**
+     * Expand a DES or TDES key to the 24 bytes of a DESede key
+     *
+     * @param algorithm Symmetric algorithm
+     * @param key       Key
+     * @return Key to use with algorithm
+     */
+    protected static byte[] symmetricKey(Algorithm algorithm, byte[] key) {
+        if (algorithm.equals(Algorithm.DES) && key.length == 8) {
+            return Bytes.concat(key, key, key);
+        } else if ((algorithm.equals(Algorithm.DES) || algorithm.equals(Algorithm.TDES)) && key.length == 16) {
+            return Bytes.concat(key, Arrays.copyOf(key, 8));
         }
+        return key;
     }
 }
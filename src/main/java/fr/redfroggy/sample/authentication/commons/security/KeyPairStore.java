@@ -0,0 +1,145 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.Callable;
+
+/**
+ * Store of an RSA key pair, kept in two files: public key X.509 encoded, private key PKCS#8 encoded.
+ * Key pair is loaded from its files when they exist, otherwise generated once and saved to them,
+ * so only the first start of a process pays for generation. Without files, key pair is generated on each start.
+ */
+@Slf4j
+public class KeyPairStore {
+
+    protected final int keySize;
+
+    protected final Path publicKeyFile;
+
+    protected final Path privateKeyFile;
+
+    /**
+     * Construct store
+     *
+     * @param keySize        Size of generated keys (in bits)
+     * @param publicKeyFile  Public key file (null to generate key pair on each start)
+     * @param privateKeyFile Private key file (null to generate key pair on each start)
+     */
+    public KeyPairStore(int keySize, Path publicKeyFile, Path privateKeyFile) {
+        this.keySize = keySize;
+        this.publicKeyFile = publicKeyFile;
+        this.privateKeyFile = privateKeyFile;
+    }
+
+    /**
+     * Get key pair: load it, or generate it (and save it if store has files)
+     *
+     * @return Key pair
+     * @throws IOException              If key files cannot be read or written
+     * @throws GeneralSecurityException If keys are invalid or cannot be generated
+     */
+    public KeyPair get() throws IOException, GeneralSecurityException {
+        if (publicKeyFile == null || privateKeyFile == null) {
+            return generate();
+        }
+
+        if (Files.exists(publicKeyFile) && Files.exists(privateKeyFile)) {
+            log.info("Load key pair from {}", publicKeyFile);
+            return load(publicKeyFile, privateKeyFile);
+        }
+
+        KeyPair keyPair = generate();
+        save(keyPair, publicKeyFile, privateKeyFile);
+        log.info("Key pair saved to {}", publicKeyFile);
+        return keyPair;
+    }
+
+    /**
+     * Get key pair in background, so that startup goes on while it is generated
+     *
+     * @return Future key pair
+     */
+    public ListenableFuture<KeyPair> getAsync() {
+        ListenableFutureTask<KeyPair> task = ListenableFutureTask.create(new Callable<KeyPair>() {
+            @Override
+            public KeyPair call() throws Exception {
+                return get();
+            }
+        });
+        Thread thread = new Thread(task, "key-pair");
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Generate a key pair
+     *
+     * @return New key pair
+     * @throws GeneralSecurityException If RSA is not available
+     */
+    public KeyPair generate() throws GeneralSecurityException {
+        long start = System.nanoTime();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(Algorithm.RSA.getKeyAlgorithm());
+        generator.initialize(keySize);
+        KeyPair keyPair = generator.generateKeyPair();
+        log.info("{} bits key pair generated in {} ms", keySize, (System.nanoTime() - start) / 1000000);
+        return keyPair;
+    }
+
+    /**
+     * Load a key pair
+     *
+     * @param publicKeyFile  Public key file (X.509)
+     * @param privateKeyFile Private key file (PKCS#8)
+     * @return Key pair
+     * @throws IOException              If a file cannot be read
+     * @throws GeneralSecurityException If a key is invalid
+     */
+    public static KeyPair load(Path publicKeyFile, Path privateKeyFile) throws IOException, GeneralSecurityException {
+        KeyFactory keyFactory = KeyFactory.getInstance(Algorithm.RSA.getKeyAlgorithm());
+        return new KeyPair(
+                keyFactory.generatePublic(new X509EncodedKeySpec(Files.readAllBytes(publicKeyFile))),
+                keyFactory.generatePrivate(new PKCS8EncodedKeySpec(Files.readAllBytes(privateKeyFile))));
+    }
+
+    /**
+     * Save a key pair, private key file is readable by its owner only (when file system supports it)
+     *
+     * @param keyPair        Key pair
+     * @param publicKeyFile  Public key file (X.509)
+     * @param privateKeyFile Private key file (PKCS#8)
+     * @throws IOException If a file cannot be written
+     */
+    public static void save(KeyPair keyPair, Path publicKeyFile, Path privateKeyFile) throws IOException {
+        createParent(publicKeyFile);
+        createParent(privateKeyFile);
+
+        Files.deleteIfExists(privateKeyFile);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(privateKeyFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        Files.write(privateKeyFile, keyPair.getPrivate().getEncoded());
+        Files.write(publicKeyFile, keyPair.getPublic().getEncoded());
+    }
+
+    protected static void createParent(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+}
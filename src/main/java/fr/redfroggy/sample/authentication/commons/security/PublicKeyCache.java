@@ -0,0 +1,77 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * Bounded cache of parsed RSA public keys, by their encoded bytes.
+ * Clients keep their key pair across connections, so a known client public key is not parsed again on each
+ * key exchange. Least recently used keys are evicted beyond cache size.
+ */
+public class PublicKeyCache {
+
+    /**
+     * Cache shared by cipher services
+     */
+    public static final PublicKeyCache SHARED = new PublicKeyCache(1024);
+
+    protected final Cache<ByteBuffer, PublicKey> keys;
+
+    /**
+     * Key factory, created once (parsing is only done on cache miss, under its lock)
+     */
+    protected final KeyFactory keyFactory;
+
+    /**
+     * Construct cache
+     *
+     * @param size Maximum number of cached keys
+     */
+    public PublicKeyCache(int size) {
+        keys = CacheBuilder.newBuilder().maximumSize(size).build();
+        try {
+            keyFactory = KeyFactory.getInstance(Algorithm.RSA.getKeyAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA not available", e);
+        }
+    }
+
+    /**
+     * Get public key from its encoded bytes
+     *
+     * @param encoded X.509 encoded public key
+     * @return Public key
+     * @throws GeneralSecurityException If key is invalid
+     */
+    public PublicKey get(byte[] encoded) throws GeneralSecurityException {
+        PublicKey key = keys.getIfPresent(ByteBuffer.wrap(encoded));
+        if (key == null) {
+            key = parse(encoded);
+            // Cache key is a copy, caller may reuse its array
+            keys.put(ByteBuffer.wrap(encoded.clone()), key);
+        }
+        return key;
+    }
+
+    /**
+     * Count cached keys
+     *
+     * @return Number of keys
+     */
+    public long size() {
+        return keys.size();
+    }
+
+    protected PublicKey parse(byte[] encoded) throws GeneralSecurityException {
+        synchronized (keyFactory) {
+            return keyFactory.generatePublic(new X509EncodedKeySpec(encoded));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Cryptographically strong random values, for challenges and random sequences.
+ * Each thread uses its own generator, seeded from the system one, so concurrent handshakes do not contend on a
+ * shared generator lock. Virtual threads, one per session, share a generator per processor instead.
+ * Blocks can also be generated in background into a bounded ring, so handshake bursts take ready values
+ * instead of generating them.
+ */
+@Slf4j
+public class RandomSource {
+
+    /**
+     * Size of pre-generated blocks (biggest algorithm bloc size)
+     */
+    public static final int BLOCK_SIZE = 16;
+
+    /**
+     * Generator algorithm: instances are independent, unlike the system generator sharing a global lock
+     */
+    protected static final String ALGORITHM = "SHA1PRNG";
+
+    protected static final int SEED_SIZE = 32;
+
+    /**
+     * System generator, seeding per thread generators
+     */
+    protected static final SecureRandom SEEDER = new SecureRandom();
+
+    /**
+     * Source shared by cipher services, without pre-generation
+     */
+    public static final RandomSource SHARED = new RandomSource(0);
+
+    protected final ThreadLocal<SecureRandom> randoms = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return newGenerator();
+        }
+    };
+
+    /**
+     * Generators of virtual threads, which are too many and short-lived to seed one each
+     */
+    protected final SecureRandom[] stripes = new SecureRandom[Runtime.getRuntime().availableProcessors()];
+
+    /**
+     * Pre-generated blocks, null if pre-generation is disabled
+     */
+    protected final BlockingQueue<byte[]> blocks;
+
+    /**
+     * Construct source
+     *
+     * @param pregenerated Number of blocks generated in background, 0 to generate values on demand only
+     */
+    public RandomSource(int pregenerated) {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = newGenerator();
+        }
+        if (pregenerated > 0) {
+            blocks = new ArrayBlockingQueue<>(pregenerated);
+            Thread refill = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    refill();
+                }
+            }, "random-refill");
+            refill.setDaemon(true);
+            refill.start();
+        } else {
+            blocks = null;
+        }
+    }
+
+    /**
+     * Get random bytes
+     *
+     * @param size Number of bytes
+     * @return New array of random bytes
+     */
+    public byte[] next(int size) {
+        if (blocks != null && size <= BLOCK_SIZE) {
+            byte[] block = blocks.poll();
+            if (block != null) {
+                return size == BLOCK_SIZE ? block : Arrays.copyOf(block, size);
+            }
+        }
+
+        byte[] bytes = new byte[size];
+        generator().nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Count pre-generated blocks ready for use
+     *
+     * @return Number of blocks
+     */
+    public int available() {
+        return blocks == null ? 0 : blocks.size();
+    }
+
+    /**
+     * Get generator of current thread
+     *
+     * @return Generator
+     */
+    protected SecureRandom generator() {
+        Thread thread = Thread.currentThread();
+        if (thread.isVirtual()) {
+            return stripes[(int) (thread.threadId() % stripes.length)];
+        }
+        return randoms.get();
+    }
+
+    /**
+     * Keep pre-generated blocks full, waiting while they are
+     */
+    protected void refill() {
+        SecureRandom random = newGenerator();
+        try {
+            while (true) {
+                byte[] block = new byte[BLOCK_SIZE];
+                random.nextBytes(block);
+                blocks.put(block);
+            }
+        } catch (InterruptedException e) {
+            log.debug("Random refill interrupted");
+        }
+    }
+
+    /**
+     * Create a generator, seeded from the system generator (which does not block on entropy)
+     *
+     * @return Generator
+     */
+    protected static SecureRandom newGenerator() {
+        byte[] seed = new byte[SEED_SIZE];
+        SEEDER.nextBytes(seed);
+        try {
+            SecureRandom random = SecureRandom.getInstance(ALGORITHM);
+            random.setSeed(seed);
+            return random;
+        } catch (NoSuchAlgorithmException e) {
+            log.warn("{} not available, using system generator", ALGORITHM);
+            return new SecureRandom(seed);
+        }
+    }
+}
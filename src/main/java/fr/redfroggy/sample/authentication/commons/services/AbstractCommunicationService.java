@@ -2,14 +2,22 @@ package fr.redfroggy.sample.authentication.commons.services;
 
 import com.google.common.primitives.Bytes;
 import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.metrics.Meters;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
 import fr.redfroggy.sample.authentication.commons.security.CipherService;
-import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.commons.utils.BufferPool;
+import fr.redfroggy.sample.authentication.commons.utils.LazyBytes;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 
@@ -24,9 +32,26 @@ public class AbstractCommunicationService {
 
     protected DataOutputStream out;
 
-    protected InputStream in;
+    protected DataInputStream in;
 
-    protected static final int FRAME_SIZE = 64;
+    protected BufferPool bufferPool = BufferPool.SHARED;
+
+    protected Meters meters = Meters.SHARED;
+
+    protected static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Open framed streams on a connected socket.
+     * Each frame is flushed as a whole, so Nagle's algorithm is disabled: it would delay pipelined frames.
+     *
+     * @param socket Connected socket
+     * @throws IOException If socket streams cannot be opened
+     */
+    protected void open(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
 
     /**
      * Send command to server and wait for response
@@ -49,12 +74,17 @@ public class AbstractCommunicationService {
      */
     protected byte[] send(byte[] cmd, boolean waitForResponse) throws CommunicationException {
         try {
+            out.writeInt(cmd.length);
             out.write(cmd);
-            log.info("Send: {} bytes | {} | {}", cmd.length, BytesUtils.bytesToHex(cmd, ' '), new String(cmd));
+            out.flush();
+            meters.sent(CommandSet.HEADER_SIZE + cmd.length);
+            if (log.isInfoEnabled()) {
+                log.info("Send: {} bytes | {} | {}", cmd.length, LazyBytes.hex(cmd), LazyBytes.text(cmd));
+            }
             if (waitForResponse) {
                 return receive();
             } else {
-                return new byte[0];
+                return EMPTY;
             }
         } catch (IOException e) {
             throw new CommunicationException("Sending error", e);
@@ -62,27 +92,136 @@ public class AbstractCommunicationService {
     }
 
     /**
-     * Listen for server response
+     * Send command to server and wait for response, payload is written behind instruction code without copy
+     *
+     * @param instruction Command instruction
+     * @param payload     Command payload
+     * @return Receive bytes
+     * @throws CommunicationException If a communication error occurred
+     */
+    protected byte[] send(CommandSet.Instruction instruction, byte[] payload) throws CommunicationException {
+        try {
+            out.writeInt(payload.length + 1);
+            out.writeByte(instruction.getCode());
+            out.write(payload);
+            out.flush();
+            meters.sent(CommandSet.frameSize(payload.length));
+            if (log.isInfoEnabled()) {
+                log.info("Send: {} bytes | {} {} | {}", payload.length + 1, instruction, LazyBytes.hex(payload), LazyBytes.text(payload));
+            }
+            return receive();
+        } catch (IOException e) {
+            throw new CommunicationException("Sending error", e);
+        }
+    }
+
+    /**
+     * Send sequenced command without waiting for response, responses are read separately (pipelining)
+     *
+     * @param instruction Command instruction
+     * @param sequence    Sequence number, written before payload
+     * @param payload     Command payload
+     * @throws CommunicationException If a communication error occurred
+     */
+    protected void write(CommandSet.Instruction instruction, int sequence, byte[] payload) throws CommunicationException {
+        try {
+            out.writeInt(1 + CommandSet.SEQUENCE_SIZE + payload.length);
+            out.writeByte(instruction.getCode());
+            out.writeInt(sequence);
+            out.write(payload);
+            out.flush();
+            meters.sent(CommandSet.frameSize(CommandSet.SEQUENCE_SIZE + payload.length));
+            if (log.isInfoEnabled()) {
+                log.info("Send: {} bytes | {} #{} | {}", 1 + CommandSet.SEQUENCE_SIZE + payload.length, instruction, sequence, LazyBytes.hex(payload));
+            }
+        } catch (IOException e) {
+            throw new CommunicationException("Sending error", e);
+        }
+    }
+
+    /**
+     * Send command without waiting for response (message stream chunk), payload is written behind instruction code
+     * without copy
+     *
+     * @param instruction Command instruction
+     * @param payload     Array holding command payload
+     * @param offset      Payload offset in array
+     * @param length      Payload length
+     * @throws CommunicationException If a communication error occurred
+     */
+    protected void write(CommandSet.Instruction instruction, byte[] payload, int offset, int length) throws CommunicationException {
+        try {
+            out.writeInt(length + 1);
+            out.writeByte(instruction.getCode());
+            out.write(payload, offset, length);
+            out.flush();
+            meters.sent(CommandSet.frameSize(length));
+            log.debug("Send: {} bytes | {}", length + 1, instruction);
+        } catch (IOException e) {
+            throw new CommunicationException("Sending error", e);
+        }
+    }
+
+    /**
+     * Listen for server response: read exactly one frame
      *
      * @return Receive bytes
      * @throws CommunicationException If a communication error occurred
      */
     protected byte[] receive() throws CommunicationException {
+        ByteBuffer buffer = receiveBuffer();
+        try {
+            byte[] result = new byte[buffer.remaining()];
+            buffer.get(result);
+            return result;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Listen for a command: read exactly one frame into a pooled buffer, grown as bytes arrive.
+     * Buffer must be given back to the pool once the command is processed.
+     *
+     * @return Buffer holding received bytes between its position and its limit
+     * @throws CommunicationException If a communication error occurred
+     */
+    protected ByteBuffer receiveBuffer() throws CommunicationException {
+        ByteBuffer result = null;
         try {
-            byte[] result = new byte[0];
-            int count;
-            do {
-                byte[] frame = new byte[FRAME_SIZE];
-                count = in.read(frame);
-                result = Bytes.concat(result, Arrays.copyOf(frame, count));
-            } while (count >= FRAME_SIZE);
-            log.info("Receive: {} bytes | {} | {}", result.length, BytesUtils.bytesToHex(result, ' '), new String(result));
+            int length = CommandSet.checkLength(in.readInt(), maxCommandSize());
+            result = bufferPool.acquire(Math.min(length, CommandSet.RECEIVE_CHUNK_SIZE));
+            while (result.position() < length) {
+                if (!result.hasRemaining()) {
+                    result = bufferPool.grow(result, Math.min(length, result.position() * 2));
+                }
+                int count = in.read(result.array(), result.arrayOffset() + result.position(), result.remaining());
+                if (count < 0) {
+                    throw new EOFException("End of stream in a " + length + " bytes frame");
+                }
+                result.position(result.position() + count);
+            }
+            result.flip();
+            meters.received(CommandSet.HEADER_SIZE + length);
+            if (log.isInfoEnabled()) {
+                log.info("Receive: {} bytes | {} | {}", length, LazyBytes.hex(result), LazyBytes.text(result));
+            }
             return result;
         } catch (IOException e) {
+            bufferPool.release(result);
             throw new CommunicationException("Receiving error", e);
         }
     }
 
+    /**
+     * Maximum length of a received command
+     *
+     * @return Maximum command length
+     */
+    protected int maxCommandSize() {
+        return CommandSet.MAX_COMMAND_SIZE;
+    }
+
     /**
      * Set session key
      *
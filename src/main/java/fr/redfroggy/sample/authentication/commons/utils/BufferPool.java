@@ -0,0 +1,123 @@
+package fr.redfroggy.sample.authentication.commons.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of reusable heap byte buffers, sorted by size classes (powers of two).
+ * Buffers larger than the biggest size class are allocated on demand and never retained.
+ */
+public class BufferPool {
+
+    /**
+     * Pool shared by communication services
+     */
+    public static final BufferPool SHARED = new BufferPool(6, 20, 64);
+
+    protected final int minShift;
+
+    protected final int maxShift;
+
+    protected final int maxRetained;
+
+    protected final List<Queue<ByteBuffer>> buffers;
+
+    protected final AtomicInteger[] retained;
+
+    /**
+     * Construct pool
+     *
+     * @param minShift    Smallest size class (2^minShift bytes)
+     * @param maxShift    Biggest size class (2^maxShift bytes)
+     * @param maxRetained Maximum number of free buffers retained per size class
+     */
+    public BufferPool(int minShift, int maxShift, int maxRetained) {
+        this.minShift = minShift;
+        this.maxShift = maxShift;
+        this.maxRetained = maxRetained;
+        this.buffers = new ArrayList<>(maxShift - minShift + 1);
+        this.retained = new AtomicInteger[maxShift - minShift + 1];
+        for (int i = 0; i < retained.length; i++) {
+            buffers.add(new ConcurrentLinkedQueue<>());
+            retained[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Acquire a buffer, its limit is set to the requested size
+     *
+     * @param size Required size
+     * @return Cleared buffer with at least the required capacity
+     */
+    public ByteBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        if (sizeClass < 0) {
+            return ByteBuffer.allocate(size);
+        }
+
+        ByteBuffer buffer = buffers.get(sizeClass).poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(1 << (sizeClass + minShift));
+        } else {
+            retained[sizeClass].decrementAndGet();
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Replace a buffer with a bigger one holding its bytes, the former buffer is released
+     *
+     * @param buffer Buffer written up to its position
+     * @param size   Required size
+     * @return Buffer holding former bytes, its position is after them and its limit set to the required size
+     */
+    public ByteBuffer grow(ByteBuffer buffer, int size) {
+        ByteBuffer grown = acquire(size);
+        buffer.flip();
+        grown.put(buffer);
+        release(buffer);
+        return grown;
+    }
+
+    /**
+     * Give a buffer back to the pool, it must not be used anymore by the caller
+     *
+     * @param buffer Buffer to release (may be null)
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasArray() || buffer.arrayOffset() != 0) {
+            return;
+        }
+
+        int sizeClass = sizeClass(buffer.capacity());
+        if (sizeClass < 0 || buffer.capacity() != 1 << (sizeClass + minShift)) {
+            return;
+        }
+
+        if (retained[sizeClass].incrementAndGet() <= maxRetained) {
+            buffers.get(sizeClass).offer(buffer);
+        } else {
+            retained[sizeClass].decrementAndGet();
+        }
+    }
+
+    /**
+     * Find size class of a buffer
+     *
+     * @param size Buffer size
+     * @return Size class index, or -1 if size is bigger than the biggest class
+     */
+    protected int sizeClass(int size) {
+        if (size > 1 << maxShift) {
+            return -1;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, minShift) - minShift;
+    }
+}
@@ -1,6 +1,8 @@
 package fr.redfroggy.sample.authentication.commons.utils;
 
 import com.google.common.primitives.Bytes;
+import fr.redfroggy.sample.authentication.commons.protocol.ChecksumAlgorithm;
+import fr.redfroggy.sample.authentication.commons.protocol.MessageChecksum;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
@@ -19,6 +21,11 @@ public abstract class BytesUtils {
      */
     public static final char DEFAULT_HEXA_DELIMITER = ' ';
 
+    /**
+     * Hexadecimal digits, indexed by nibble value
+     */
+    protected static final char[] HEXA_DIGITS = "0123456789ABCDEF".toCharArray();
+
     /**
      * Format bytes array to hexadecimal representation
      *
@@ -59,11 +66,24 @@ public abstract class BytesUtils {
      * @return hexadecimal representation
      */
     public static String bytesToHex(byte[] bytes, char separator, int bytePerRow) {
+        return appendHex(new StringBuilder(bytes.length * 3), bytes, 0, bytes.length, separator, bytePerRow).toString();
+    }
 
-        int count = 0;
-        StringBuilder hexa = new StringBuilder();
+    /**
+     * Append hexadecimal representation of a part of bytes array
+     *
+     * @param hexa       Builder to append to
+     * @param bytes      Bytes array to format
+     * @param offset     Offset of first byte to format
+     * @param length     Number of bytes to format
+     * @param separator  Char used to separate hex values
+     * @param bytePerRow Number of byte per row (0 for a single row)
+     * @return Builder
+     */
+    public static StringBuilder appendHex(StringBuilder hexa, byte[] bytes, int offset, int length, char separator, int bytePerRow) {
 
-        for (int i = 0; i < bytes.length; i++) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
             if (bytePerRow > 0 && count == bytePerRow) {
                 hexa.append('\n');
                 count = 0;
@@ -71,11 +91,40 @@ public abstract class BytesUtils {
                 hexa.append(separator);
             }
 
-            hexa.append(String.format("%02X", bytes[i]));
+            int value = bytes[offset + i] & 0xFF;
+            hexa.append(HEXA_DIGITS[value >>> 4]).append(HEXA_DIGITS[value & 0x0F]);
             count++;
         }
 
-        return hexa.toString();
+        return hexa;
+    }
+
+    /**
+     * Write hexadecimal representation of a part of bytes array on a single row.
+     * Destination must have room for 3 * length - 1 chars.
+     *
+     * @param bytes      Bytes array to format
+     * @param offset     Offset of first byte to format
+     * @param length     Number of bytes to format
+     * @param separator  Char used to separate hex values
+     * @param hexa       Destination
+     * @param hexaOffset Offset of first char to write in destination
+     * @return Number of chars written
+     */
+    public static int writeHex(byte[] bytes, int offset, int length, char separator, char[] hexa, int hexaOffset) {
+
+        int index = hexaOffset;
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                hexa[index++] = separator;
+            }
+
+            int value = bytes[offset + i] & 0xFF;
+            hexa[index++] = HEXA_DIGITS[value >>> 4];
+            hexa[index++] = HEXA_DIGITS[value & 0x0F];
+        }
+
+        return index - hexaOffset;
     }
 
     /**
@@ -103,18 +152,7 @@ public abstract class BytesUtils {
      * @return 4 bytes array crc 32
      */
     public static byte[] crc32(byte[] data) {
-        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
-        crc.update(data, 0, data.length);
-        long l = crc.getValue();
-
-        byte[] ret = new byte[4];
-        for (int i = 0; i < 4; i++) {
-            ret[i] = (byte) (l & 0x00000000000000ff);
-            ret[i] = (byte) ~ret[i];
-            l >>>= 8;
-        }
-
-        return ret;
+        return new MessageChecksum(ChecksumAlgorithm.CRC32).update(data).get();
     }
 
     /**
@@ -0,0 +1,78 @@
+package fr.redfroggy.sample.authentication.commons.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Log argument formatting a part of bytes array only when the message is actually logged.
+ * Bytes are not copied, so the argument must be logged before the array is modified.
+ */
+public final class LazyBytes {
+
+    protected final byte[] bytes;
+
+    protected final int offset;
+
+    protected final int length;
+
+    protected final boolean hexa;
+
+    protected LazyBytes(byte[] bytes, int offset, int length, boolean hexa) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.hexa = hexa;
+    }
+
+    /**
+     * Hexadecimal representation of bytes array
+     *
+     * @param bytes Bytes array
+     * @return Log argument
+     */
+    public static LazyBytes hex(byte[] bytes) {
+        return new LazyBytes(bytes, 0, bytes.length, true);
+    }
+
+    /**
+     * Hexadecimal representation of buffer bytes between its position and its limit
+     *
+     * @param buffer Heap buffer
+     * @return Log argument
+     */
+    public static LazyBytes hex(ByteBuffer buffer) {
+        return new LazyBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), true);
+    }
+
+    /**
+     * Text representation (platform charset) of bytes array
+     *
+     * @param bytes Bytes array
+     * @return Log argument
+     */
+    public static LazyBytes text(byte[] bytes) {
+        return new LazyBytes(bytes, 0, bytes.length, false);
+    }
+
+    /**
+     * Text representation (platform charset) of buffer bytes between its position and its limit
+     *
+     * @param buffer Heap buffer
+     * @return Log argument
+     */
+    public static LazyBytes text(ByteBuffer buffer) {
+        return new LazyBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), false);
+    }
+
+    @Override
+    public String toString() {
+        if (!hexa) {
+            return new String(bytes, offset, length);
+        }
+        if (length == 0) {
+            return "";
+        }
+        char[] chars = new char[length * 3 - 1];
+        BytesUtils.writeHex(bytes, offset, length, BytesUtils.DEFAULT_HEXA_DELIMITER, chars, 0);
+        return new String(chars);
+    }
+}
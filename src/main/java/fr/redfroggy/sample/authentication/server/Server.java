@@ -4,11 +4,12 @@ import fr.redfroggy.sample.authentication.server.services.ServerService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 
-import javax.annotation.PostConstruct;
+import jakarta.annotation.PostConstruct;
 
 /**
  * Server application
@@ -35,7 +36,7 @@ public class Server {
     public static void main(String[] args) throws Exception {
         Server.log.info("Server is running");
         SpringApplication app = new SpringApplication(Server.class);
-        app.setWebEnvironment(false);
+        app.setWebApplicationType(WebApplicationType.NONE);
         ConfigurableApplicationContext ctx = app.run(args);
         SpringApplication.exit(ctx);
         Server.log.info("Server stopped");
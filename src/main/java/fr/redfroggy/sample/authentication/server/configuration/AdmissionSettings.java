@@ -0,0 +1,39 @@
+package fr.redfroggy.sample.authentication.server.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for admission of client connections and handshakes, clients beyond limits are answered "busy"
+ */
+@Component
+@ConfigurationProperties(prefix = "admission")
+@Data
+public class AdmissionSettings {
+
+    /**
+     * Maximum number of sessions served at once (session threads for BLOCKING transport)
+     * default: 1024
+     */
+    protected int maxSessions = 1024;
+
+    /**
+     * Maximum number of accepted sessions waiting for a session thread (BLOCKING transport)
+     * default: 64
+     */
+    protected int maxPendingSessions = 64;
+
+    /**
+     * Maximum number of authentications (or resumptions) in progress at once
+     * default: 4 per available processor
+     */
+    protected int maxHandshakes = 4 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Time given to a handshake (in milliseconds), client is disconnected beyond and its permit given back, 0 for no limit
+     * default: 10000
+     */
+    protected long handshakeTimeout = 10000;
+
+}
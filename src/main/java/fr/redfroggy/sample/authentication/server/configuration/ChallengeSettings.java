@@ -0,0 +1,21 @@
+package fr.redfroggy.sample.authentication.server.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for challenges generation
+ */
+@Component
+@ConfigurationProperties(prefix = "challenge")
+@Data
+public class ChallengeSettings {
+
+    /**
+     * Number of challenges generated in background, ready for handshake bursts (0 to generate them on demand)
+     * default: 0
+     */
+    protected int pregenerated = 0;
+
+}
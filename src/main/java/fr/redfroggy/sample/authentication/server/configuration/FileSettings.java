@@ -0,0 +1,20 @@
+package fr.redfroggy.sample.authentication.server.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for file transfer
+ */
+@Component
+@ConfigurationProperties(prefix = "files")
+@Data
+public class FileSettings {
+
+    /**
+     * Directory receiving transferred files, file transfer is disabled without it
+     * default: none
+     */
+    protected String directory;
+}
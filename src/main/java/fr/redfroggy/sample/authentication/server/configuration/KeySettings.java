@@ -29,4 +29,30 @@ public class KeySettings {
      * default: 2048
      */
     protected int rsaKeySize = 2048;
+
+    /**
+     * RSA public key file (X.509), with private key file: key pair is loaded from them, or generated once and saved
+     * to them. Without files, key pair is generated on each start
+     * default: none
+     */
+    protected String rsaPublicKey;
+
+    /**
+     * RSA private key file (PKCS#8)
+     * default: none
+     */
+    protected String rsaPrivateKey;
+
+    /**
+     * Load or generate RSA key pair in background, startup only waits for it at first use
+     * default: false
+     */
+    protected boolean rsaAsync = false;
+
+    /**
+     * Hybrid RSA mode: once public keys are exchanged, an AES session key is transported with RSA and
+     * ciphers messages instead of RSA
+     * default: true
+     */
+    protected boolean rsaHybrid = true;
 }
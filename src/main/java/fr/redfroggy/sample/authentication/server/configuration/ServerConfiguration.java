@@ -1,17 +1,37 @@
 package fr.redfroggy.sample.authentication.server.configuration;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import fr.redfroggy.sample.authentication.commons.metrics.HandshakeRecorder;
 import fr.redfroggy.sample.authentication.commons.security.Algorithm;
 import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.security.KeyPairStore;
+import fr.redfroggy.sample.authentication.commons.security.RandomSource;
 import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.services.SessionStore;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Server configuration
@@ -25,41 +45,131 @@ public class ServerConfiguration {
     @Autowired
     protected KeySettings keySettings;
 
+    @Autowired
+    protected SessionStoreSettings sessionStoreSettings;
+
+    @Autowired
+    protected ChallengeSettings challengeSettings;
+
+    @Autowired
+    protected AdmissionSettings admissionSettings;
+
+    @Autowired
+    protected LatencySettings latencySettings;
+
     /**
-     * Construct server socket
+     * Construct server socket, backed by a channel for NIO transport
      *
      * @return Server socket
      * @throws IOException If an error occurred during socket construction
      */
     @Bean
     public ServerSocket getServerSocket() throws IOException {
+        if (Transport.NIO == settings.getTransport()) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(settings.getPort()));
+            return channel.socket();
+        }
         return new ServerSocket(settings.getPort());
     }
 
+    /**
+     * Construct executor running client sessions, one thread per connected client.
+     * With VIRTUAL transport, each session runs in its own virtual thread: blocking reads unmount it from its
+     * carrier thread, so connected clients do not cost a platform thread each.
+     * Otherwise session threads are bounded, as well as sessions waiting for one: beyond, sessions are rejected.
+     *
+     * @return Session executor
+     */
+    @Bean
+    public ExecutorService getSessionExecutor() {
+        if (Transport.VIRTUAL == settings.getTransport()) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("session-", 0).factory());
+        }
+
+        int threads = Math.max(1, admissionSettings.getMaxSessions());
+        int pending = admissionSettings.getMaxPendingSessions();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                pending > 0 ? new ArrayBlockingQueue<Runnable>(pending) : new SynchronousQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("session-%d").build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Construct server cipher
      *
      * @return Server cipher
      */
     @Bean
-    public CipherService getServerCipher() throws GeneralSecurityException {
+    public CipherService getServerCipher() throws IOException, GeneralSecurityException {
         Algorithm algorithm = Algorithm.valueOf(keySettings.getAlgorithm());
         byte[] key = BytesUtils.hexToBytes(keySettings.getKey());
-        return new CipherService(algorithm, key);
+        CipherService cipher = new CipherService(algorithm, key);
+        if (Algorithm.RSA.equals(algorithm)) {
+            cipher.setKeyPair(getKeyPair());
+            if (keySettings.isRsaHybrid()) {
+                cipher.setSessionAlgorithm(Algorithm.AES);
+            }
+        }
+        if (challengeSettings.getPregenerated() > 0) {
+            cipher.setRandomSource(new RandomSource(challengeSettings.getPregenerated()));
+        }
+        return cipher;
     }
 
     /**
-     * Construct key pair for RSA algorithm
+     * Construct store of authenticated sessions
      *
-     * @return Key pair
+     * @return Session store
      */
     @Bean
-    public KeyPair getKeyPair() throws GeneralSecurityException {
-        if (Algorithm.RSA.equals(Algorithm.valueOf(keySettings.getAlgorithm()))) {
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance(Algorithm.valueOf(keySettings.getAlgorithm()).getKeyAlgorithm());
-            keyGen.initialize(keySettings.getRsaKeySize());
-            return keyGen.genKeyPair();
+    public SessionStore getSessionStore() {
+        return new SessionStore(sessionStoreSettings.getCapacity(),
+                TimeUnit.SECONDS.toMillis(sessionStoreSettings.getTtl()), sessionStoreSettings.getSegments());
+    }
+
+    /**
+     * Construct metrics registry, meters are published through JMX (domain "metrics").
+     * Registry is added to the global registry, where communication meters are registered.
+     *
+     * @return Metrics registry
+     */
+    @Bean
+    public MeterRegistry getMeterRegistry() {
+        MeterRegistry registry = new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM);
+        Metrics.addRegistry(registry);
+        return registry;
+    }
+
+    /**
+     * Construct recorder of handshake phases latency, writing interval histograms to latency log if enabled
+     *
+     * @return Handshake latency recorder
+     */
+    @Bean(destroyMethod = "close")
+    public HandshakeRecorder getHandshakeRecorder() {
+        HandshakeRecorder recorder = HandshakeRecorder.SHARED;
+        if (latencySettings.getInterval() > 0) {
+            recorder.start(latencySettings.getInterval(), TimeUnit.SECONDS);
+        }
+        return recorder;
+    }
+
+    /**
+     * Get key pair for RSA algorithm, from key files if configured
+     *
+     * @return Key pair, possibly still being loaded or generated
+     * @throws IOException              If key files cannot be read or written
+     * @throws GeneralSecurityException If key pair cannot be loaded or generated
+     */
+    protected Future<KeyPair> getKeyPair() throws IOException, GeneralSecurityException {
+        KeyPairStore store = new KeyPairStore(keySettings.getRsaKeySize(),
+                keySettings.getRsaPublicKey() == null ? null : Paths.get(keySettings.getRsaPublicKey()),
+                keySettings.getRsaPrivateKey() == null ? null : Paths.get(keySettings.getRsaPrivateKey()));
+        if (keySettings.isRsaAsync()) {
+            return store.getAsync();
         }
-        return null;
+        return Futures.immediateFuture(store.get());
     }
 }
@@ -0,0 +1,33 @@
+package fr.redfroggy.sample.authentication.server.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for the store of resumable sessions
+ */
+@Component
+@ConfigurationProperties(prefix = "sessions")
+@Data
+public class SessionStoreSettings {
+
+    /**
+     * Maximum number of stored sessions, least recently seen sessions are evicted beyond (72 bytes of direct memory each)
+     * default: 100000
+     */
+    protected int capacity = 100000;
+
+    /**
+     * Time after which a session not seen expires (in seconds)
+     * default: 3600
+     */
+    protected long ttl = 3600;
+
+    /**
+     * Number of independently locked store segments
+     * default: 16
+     */
+    protected int segments = 16;
+
+}
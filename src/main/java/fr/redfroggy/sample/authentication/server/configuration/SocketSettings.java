@@ -18,4 +18,35 @@ public class SocketSettings {
      */
     protected int port = 12345;
 
+    /**
+     * Server transport (BLOCKING, VIRTUAL or NIO)
+     * default: BLOCKING
+     */
+    protected Transport transport = Transport.BLOCKING;
+
+    /**
+     * Number of selector event loops (NIO transport)
+     * default: number of available processors
+     */
+    protected int selectors = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum length of a command received from an authenticated session (bytes)
+     * default: 16 MB
+     */
+    protected int maxCommandSize = 16 * 1024 * 1024;
+
+    /**
+     * Maximum length of a command received before authentication: handshake commands only carry challenges,
+     * public keys and tickets (bytes)
+     * default: 8 KB
+     */
+    protected int maxHandshakeCommandSize = 8 * 1024;
+
+    /**
+     * Maximum number of deferred responses pending per session, its commands are not read beyond
+     * default: 64
+     */
+    protected int maxDeferredResponses = 64;
+
 }
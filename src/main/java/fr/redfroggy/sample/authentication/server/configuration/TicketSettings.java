@@ -0,0 +1,21 @@
+package fr.redfroggy.sample.authentication.server.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for session resumption tickets
+ */
+@Component
+@ConfigurationProperties(prefix = "ticket")
+@Data
+public class TicketSettings {
+
+    /**
+     * Ticket lifetime (in seconds), 0 to disable session resumption
+     * default: 3600
+     */
+    protected long lifetime = 3600;
+
+}
@@ -0,0 +1,22 @@
+package fr.redfroggy.sample.authentication.server.configuration;
+
+/**
+ * Server transports
+ */
+public enum Transport {
+
+    /**
+     * Blocking sockets, one thread per connected client
+     */
+    BLOCKING,
+
+    /**
+     * Blocking sockets, one virtual thread per connected client
+     */
+    VIRTUAL,
+
+    /**
+     * Non-blocking channels, driven by selector event loops
+     */
+    NIO
+}
@@ -0,0 +1,21 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Asynchronous handler of the commands of an instruction, registered in a {@link CommandRegistry}.
+ * Slow processing (database writes, queue publishes...) runs off the session thread or selector loop:
+ * the response is sent when the returned future completes.
+ */
+public interface AsyncCommandHandler {
+
+    /**
+     * Start interpreting a command
+     *
+     * @param session Client session
+     * @param data    Command payload (instruction code excluded), copied: it can be retained
+     * @return Future result bytes, completed with null for commands without response.
+     * A future completed exceptionally is answered with an error.
+     */
+    CompletionStage<byte[]> handle(ServerSession session, byte[] data);
+}
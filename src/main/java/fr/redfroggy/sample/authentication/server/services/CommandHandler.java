@@ -0,0 +1,22 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.exceptions.ServerException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Handler of the commands of an instruction, registered in a {@link CommandRegistry}
+ */
+public interface CommandHandler {
+
+    /**
+     * Interpret a command
+     *
+     * @param session Client session
+     * @param data    Command payload (instruction code excluded), between buffer position and limit.
+     *                Buffer is released once handled, it must not be retained.
+     * @return Result bytes, null for commands without response
+     * @throws ServerException If an interpretation error occurred, or to end the session
+     */
+    byte[] handle(ServerSession session, ByteBuffer data) throws ServerException;
+}
@@ -0,0 +1,59 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dispatch table of command handlers, indexed by unsigned instruction code.
+ * Looking a handler up is a single array access, so dispatching a command neither allocates nor scans instructions.
+ * Handlers, synchronous or asynchronous, can be registered while the server runs. Codes without handler are answered with an error by the server.
+ */
+public class CommandRegistry {
+
+    protected final AtomicReferenceArray<CommandHandler> handlers = new AtomicReferenceArray<>(256);
+
+    /**
+     * Register the handler of an instruction code, replacing the previous one
+     *
+     * @param code    Instruction code, built-in or custom
+     * @param handler Handler, null to unregister the code
+     * @return Previous handler, null if code was not registered
+     */
+    public CommandHandler register(byte code, CommandHandler handler) {
+        return handlers.getAndSet(code & 0xFF, handler);
+    }
+
+    /**
+     * Register an asynchronous handler of an instruction code, replacing the previous one.
+     * Its response is sent at once if its future is already completed, otherwise once completed.
+     *
+     * @param code    Instruction code, built-in or custom
+     * @param handler Asynchronous handler
+     * @return Previous handler, null if code was not registered
+     */
+    public CommandHandler registerAsync(byte code, AsyncCommandHandler handler) {
+        return register(code, (session, data) -> {
+            byte[] payload = new byte[data.remaining()];
+            data.get(payload);
+
+            CompletionStage<byte[]> response;
+            try {
+                response = handler.handle(session, payload);
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            return session.respond(response);
+        });
+    }
+
+    /**
+     * Get the handler of an instruction code
+     *
+     * @param code Instruction code
+     * @return Handler, null if code is not registered
+     */
+    public CommandHandler get(byte code) {
+        return handlers.get(code & 0xFF);
+    }
+}
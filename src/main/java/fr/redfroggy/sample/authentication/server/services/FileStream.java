@@ -0,0 +1,145 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.protocol.MessageChecksum;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+
+/**
+ * File received as a stream of chunks, deciphered data is written into a temporary file mapped in memory by windows.
+ * Temporary file is created next to the destination, then moved onto it once complete: an existing destination is
+ * only replaced by a complete file, and concurrent transfers of a same file do not mix. Temporary file is deleted
+ * if the stream fails.
+ */
+@Slf4j
+public class FileStream extends MessageStream {
+
+    /**
+     * Size of file windows mapped at once
+     */
+    protected static final int WINDOW_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Destination file
+     */
+    @Getter
+    protected final Path path;
+
+    /**
+     * Temporary file written by this stream
+     */
+    protected final Path temporary;
+
+    /**
+     * Announced file size
+     */
+    protected final long size;
+
+    protected final FileChannel channel;
+
+    protected MappedByteBuffer window;
+
+    protected long windowEnd;
+
+    /**
+     * Open stream, a new temporary file is created in destination directory
+     *
+     * @param cipher   Cipher dedicated to the stream, initialized for decryption
+     * @param checksum Checksum dedicated to the stream
+     * @param path     Destination file
+     * @param size     Announced file size
+     * @throws IOException If file cannot be opened
+     */
+    public FileStream(Cipher cipher, MessageChecksum checksum, Path path, long size) throws IOException {
+        super(cipher, checksum);
+        this.path = path;
+        this.size = size;
+        this.temporary = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".part");
+        try {
+            // Read access is required to map file
+            this.channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    @Override
+    public void finish(ByteBuffer data, int padding) throws GeneralSecurityException {
+        super.finish(data, padding);
+        if (length != size) {
+            fail("File shorter than announced");
+        }
+    }
+
+    @Override
+    protected void consume(byte[] data, int offset, int count) {
+        super.consume(data, offset, count);
+        try {
+            while (count > 0 && error == null) {
+                if (window == null || !window.hasRemaining()) {
+                    mapNextWindow();
+                    continue;
+                }
+                int written = Math.min(count, window.remaining());
+                window.put(data, offset, written);
+                offset += written;
+                count -= written;
+            }
+        } catch (IOException e) {
+            log.error("Cannot write file {}", path, e);
+            fail("Cannot write file");
+        }
+    }
+
+    /**
+     * Close file, moved onto destination if stream succeeded, deleted otherwise
+     */
+    @Override
+    public void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.close();
+            if (error == null) {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.error("Cannot write file {}", path, e);
+            fail("Cannot write file");
+        }
+        if (error != null) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException e) {
+                log.warn("Cannot delete file {}", temporary, e);
+            }
+        }
+    }
+
+    /**
+     * Map next file window
+     *
+     * @throws IOException If file cannot be mapped
+     */
+    protected void mapNextWindow() throws IOException {
+        if (windowEnd >= size) {
+            fail("File longer than announced");
+            return;
+        }
+        long windowSize = Math.min(WINDOW_SIZE, size - windowEnd);
+        window = channel.map(FileChannel.MapMode.READ_WRITE, windowEnd, windowSize);
+        windowEnd += windowSize;
+    }
+}
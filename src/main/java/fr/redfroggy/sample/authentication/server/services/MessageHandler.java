@@ -0,0 +1,20 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Application processing of received messages (MSG, MSQ and MSB commands), once decoded.
+ * Messages are acknowledged when their processing completes, so it can run asynchronously
+ * without blocking the session thread or selector loop.
+ */
+public interface MessageHandler {
+
+    /**
+     * Start processing a decoded message
+     *
+     * @param session Client session
+     * @param message Decoded message
+     * @return Future completed once the message is processed. A future completed exceptionally is answered with an error.
+     */
+    CompletionStage<?> handle(ServerSession session, byte[] message);
+}
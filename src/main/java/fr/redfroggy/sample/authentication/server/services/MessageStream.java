@@ -0,0 +1,139 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.protocol.MessageChecksum;
+import lombok.Getter;
+
+import javax.crypto.Cipher;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * Message received as a stream of chunks, deciphered as chunks arrive with a rolling checksum.
+ * Only a chunk is held in memory, whatever the message size.
+ * Stream commands have no response, so an error is kept until end of stream.
+ */
+public class MessageStream {
+
+    protected final Cipher cipher;
+
+    /**
+     * Checksum of deciphered message, computed as chunks arrive
+     */
+    @Getter
+    protected final MessageChecksum checksum;
+
+    protected byte[] output = new byte[0];
+
+    /**
+     * Number of deciphered message bytes
+     */
+    @Getter
+    protected long length;
+
+    /**
+     * First error of the stream, null if none
+     */
+    @Getter
+    protected String error;
+
+    /**
+     * Construct stream
+     *
+     * @param cipher   Cipher dedicated to the stream, initialized for decryption
+     * @param checksum Checksum dedicated to the stream
+     */
+    public MessageStream(Cipher cipher, MessageChecksum checksum) {
+        this.cipher = cipher;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Construct a failed stream, its chunks are ignored
+     *
+     * @param error Error detail
+     * @return Failed stream
+     */
+    public static MessageStream failed(String error) {
+        MessageStream stream = new MessageStream(null, null);
+        stream.error = error;
+        return stream;
+    }
+
+    /**
+     * Record an error, following chunks are ignored
+     *
+     * @param detail Error detail
+     */
+    public void fail(String detail) {
+        if (error == null) {
+            error = detail;
+        }
+    }
+
+    /**
+     * Decipher a chunk
+     *
+     * @param data Ciphered chunk, between buffer position and limit (buffer must be backed by an array)
+     * @throws GeneralSecurityException If chunk cannot be deciphered
+     */
+    public void update(ByteBuffer data) throws GeneralSecurityException {
+        if (error != null) {
+            return;
+        }
+        int count = cipher.update(data.array(), data.arrayOffset() + data.position(), data.remaining(), output(data.remaining()), 0);
+        data.position(data.limit());
+        consume(output, 0, count);
+    }
+
+    /**
+     * Decipher last chunk, its zero padding is excluded from message
+     *
+     * @param data    Ciphered last chunk, between buffer position and limit (buffer must be backed by an array)
+     * @param padding Number of padding bytes at end of last chunk
+     * @throws GeneralSecurityException If chunk cannot be deciphered
+     */
+    public void finish(ByteBuffer data, int padding) throws GeneralSecurityException {
+        if (error != null) {
+            return;
+        }
+        int count = cipher.doFinal(data.array(), data.arrayOffset() + data.position(), data.remaining(), output(data.remaining()), 0);
+        data.position(data.limit());
+        if (padding > count) {
+            fail("Invalid padding");
+            return;
+        }
+        consume(output, 0, count - padding);
+    }
+
+    /**
+     * Release stream resources, once ended or abandoned
+     */
+    public void close() {
+    }
+
+    /**
+     * Process deciphered message bytes
+     *
+     * @param data   Array holding deciphered bytes
+     * @param offset Offset of deciphered bytes
+     * @param count  Number of deciphered bytes
+     */
+    protected void consume(byte[] data, int offset, int count) {
+        checksum.update(data, offset, count);
+        length += count;
+    }
+
+    /**
+     * Get output array, reused between chunks
+     *
+     * @param inputLength Length of ciphered data
+     * @return Array large enough for deciphered data
+     */
+    protected byte[] output(int inputLength) {
+        int size = cipher.getOutputSize(inputLength);
+        if (output.length < size) {
+            output = new byte[size];
+        }
+        return output;
+    }
+}
@@ -0,0 +1,376 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.exceptions.EOTException;
+import fr.redfroggy.sample.authentication.commons.exceptions.ServerException;
+import fr.redfroggy.sample.authentication.commons.metrics.Meters;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.protocol.FrameDecoder;
+import fr.redfroggy.sample.authentication.commons.utils.BufferPool;
+import fr.redfroggy.sample.authentication.commons.utils.LazyBytes;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selector event loop serving non-blocking client sessions (NIO transport)
+ */
+@Slf4j
+public class SelectorLoop implements Runnable, Closeable {
+
+    /**
+     * Size of read buffer shared by all sessions of the loop
+     */
+    protected static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * Interval between checks of handshake deadlines (in milliseconds)
+     */
+    protected static final long HANDSHAKE_CHECK_INTERVAL = 1000;
+
+    protected final ServerService serverService;
+
+    protected final Selector selector;
+
+    protected final Queue<ServerSession> registrations = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Deferred responses, completed by other threads
+     */
+    protected final Queue<DeferredResponse> deferredResponses = new ConcurrentLinkedQueue<>();
+
+    protected final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    protected final BufferPool bufferPool = BufferPool.SHARED;
+
+    protected final Meters meters = Meters.SHARED;
+
+    protected volatile boolean running = true;
+
+    protected long lastHandshakeCheck = System.nanoTime();
+
+    /**
+     * Construct event loop
+     *
+     * @param serverService Service interpreting received commands
+     * @throws IOException If selector cannot be opened
+     */
+    public SelectorLoop(ServerService serverService) throws IOException {
+        this.serverService = serverService;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Register a session, its connection must be backed by a channel
+     *
+     * @param session Session to serve
+     */
+    public void register(ServerSession session) {
+        session.setSelectorLoop(this);
+        registrations.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Send a deferred response of a session served by this loop, from any thread
+     *
+     * @param session  Client session
+     * @param response Response, null if there is none
+     * @return Completed by the loop once response is queued to its connection, or dropped if session is closed
+     */
+    public CompletableFuture<Void> reply(ServerSession session, byte[] response) {
+        DeferredResponse deferred = new DeferredResponse(session, response);
+        deferredResponses.add(deferred);
+        selector.wakeup();
+        return deferred.queued;
+    }
+
+    /**
+     * Run event loop until closed
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(HANDSHAKE_CHECK_INTERVAL);
+                registerPending();
+                sendDeferred();
+                expireHandshakes();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            log.debug("Selector closed");
+        } catch (IOException e) {
+            log.error("Selector error", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).session.close();
+            }
+            closeSelector();
+        }
+    }
+
+    /**
+     * Stop event loop
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Register sessions waiting for this loop
+     */
+    protected void registerPending() {
+        ServerSession session;
+        while ((session = registrations.poll()) != null) {
+            try {
+                SocketChannel channel = session.getConnection().getChannel();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.register(selector, SelectionKey.OP_READ, new Connection(session));
+                log.info("Client {} connected (session {})", session.getConnection().getInetAddress(), session.getId());
+            } catch (IOException e) {
+                log.warn("Cannot register session {}", session.getId(), e);
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Queue deferred responses to their connection, and start writing them.
+     * Responses chained to a queued one are added to the deferred responses while polling them, so they are
+     * queued in the same pass. A connection whose reading was suspended resumes it once its session is below
+     * deferred responses limit
+     */
+    protected void sendDeferred() {
+        DeferredResponse deferred;
+        while ((deferred = deferredResponses.poll()) != null) {
+            SelectionKey key = deferred.session.getConnection().getChannel().keyFor(selector);
+            if (key == null || !key.isValid()) {
+                log.debug("Session {} closed, deferred response dropped", deferred.session.getId());
+                deferred.queued.complete(null);
+                continue;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (deferred.response != null) {
+                connection.output.add(frame(deferred.response));
+            }
+            deferred.queued.complete(null);
+            if (connection.suspended && !connection.session.isBackedUp()) {
+                connection.suspended = false;
+            }
+            try {
+                write(key, connection);
+            } catch (IOException e) {
+                log.info("Session {} closed with exception", connection.session.getId(), e);
+                disconnect(connection);
+            }
+        }
+    }
+
+    /**
+     * Disconnect sessions whose handshake is over time, at most once per check interval, so that stalled clients
+     * cannot hold handshake permits
+     */
+    protected void expireHandshakes() {
+        long now = System.nanoTime();
+        if (now - lastHandshakeCheck < TimeUnit.MILLISECONDS.toNanos(HANDSHAKE_CHECK_INTERVAL)) {
+            return;
+        }
+        lastHandshakeCheck = now;
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = (Connection) key.attachment();
+            if (key.isValid() && connection.session.handshakeTimeLeft() <= 0) {
+                log.info("Handshake of session {} timed out", connection.session.getId());
+                disconnect(connection);
+            }
+        }
+    }
+
+    /**
+     * Handle a readiness event
+     *
+     * @param key Selected key
+     */
+    protected void handle(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                read(key, connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(key, connection);
+            }
+        } catch (EOTException e) {
+            log.info("End of transmission received", e);
+            disconnect(connection);
+        } catch (IOException | CommunicationException | ServerException e) {
+            log.info("Session {} closed with exception", connection.session.getId(), e);
+            disconnect(connection);
+        }
+    }
+
+    /**
+     * Read available bytes and execute each complete command. Reading is suspended once the session reaches its
+     * deferred responses limit, commands already read are still executed
+     *
+     * @param key        Selected key
+     * @param connection Connection state
+     * @throws IOException            If a communication error occurred
+     * @throws CommunicationException If a received frame is invalid
+     * @throws ServerException        If an interpretation error occurred
+     */
+    protected void read(SelectionKey key, Connection connection) throws IOException, CommunicationException, ServerException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        int count;
+        do {
+            readBuffer.clear();
+            count = channel.read(readBuffer);
+            readBuffer.flip();
+            meters.received(readBuffer.remaining());
+
+            ByteBuffer command;
+            while ((command = connection.decoder.decode(readBuffer, connection.session.maxCommandSize())) != null) {
+                try {
+                    if (log.isInfoEnabled()) {
+                        log.info("Receive: {} bytes | {} | {}", command.remaining(), LazyBytes.hex(command), LazyBytes.text(command));
+                    }
+                    byte[] response = connection.session.order(serverService.execute(connection.session, command));
+                    if (response != null) {
+                        connection.output.add(frame(response));
+                    }
+                } finally {
+                    bufferPool.release(command);
+                }
+            }
+        } while (count > 0 && !connection.session.isBackedUp());
+
+        connection.suspended = count >= 0 && connection.session.isBackedUp();
+        write(key, connection);
+
+        if (count < 0) {
+            disconnect(connection);
+        }
+    }
+
+    /**
+     * Frame a response into a pooled buffer
+     *
+     * @param response Response
+     * @return Frame, ready to be written
+     */
+    protected ByteBuffer frame(byte[] response) {
+        if (log.isInfoEnabled()) {
+            log.info("Send: {} bytes | {} | {}", response.length, LazyBytes.hex(response), LazyBytes.text(response));
+        }
+        ByteBuffer frame = bufferPool.acquire(CommandSet.HEADER_SIZE + response.length);
+        CommandSet.encode(frame, response).flip();
+        return frame;
+    }
+
+    /**
+     * Write pending responses, reading is suspended until they are fully sent, or while connection is suspended
+     *
+     * @param key        Selected key
+     * @param connection Connection state
+     * @throws IOException If a communication error occurred
+     */
+    protected void write(SelectionKey key, Connection connection) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer output;
+        while ((output = connection.output.peek()) != null) {
+            meters.sent(channel.write(output));
+            if (output.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            bufferPool.release(connection.output.poll());
+        }
+        key.interestOps(connection.suspended ? 0 : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Close a client session
+     *
+     * @param connection Connection state
+     */
+    protected void disconnect(Connection connection) {
+        log.info("Client {} disconnected (session {})", connection.session.getConnection().getInetAddress(), connection.session.getId());
+        connection.session.close();
+        connection.decoder.reset();
+        ByteBuffer output;
+        while ((output = connection.output.poll()) != null) {
+            bufferPool.release(output);
+        }
+    }
+
+    /**
+     * Close selector
+     */
+    protected void closeSelector() {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Cannot close selector", e);
+        }
+    }
+
+    /**
+     * State of a connection registered in the loop
+     */
+    protected static class Connection {
+
+        protected final ServerSession session;
+
+        protected final FrameDecoder decoder = new FrameDecoder();
+
+        protected final Queue<ByteBuffer> output = new ArrayDeque<>();
+
+        /**
+         * Reading is suspended, session reached its deferred responses limit
+         */
+        protected boolean suspended;
+
+        protected Connection(ServerSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * Response completed outside the loop
+     */
+    protected static class DeferredResponse {
+
+        protected final ServerSession session;
+
+        protected final byte[] response;
+
+        protected final CompletableFuture<Void> queued = new CompletableFuture<>();
+
+        protected DeferredResponse(ServerSession session, byte[] response) {
+            this.session = session;
+            this.response = response;
+        }
+    }
+}
@@ -1,144 +1,487 @@
 package fr.redfroggy.sample.authentication.server.services;
 
 import com.google.common.primitives.Bytes;
-import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import fr.redfroggy.sample.authentication.commons.exceptions.EOTException;
 import fr.redfroggy.sample.authentication.commons.exceptions.ServerException;
+import fr.redfroggy.sample.authentication.commons.exceptions.TransmissionException;
+import fr.redfroggy.sample.authentication.commons.metrics.HandshakePhase;
+import fr.redfroggy.sample.authentication.commons.metrics.HandshakeRecorder;
+import fr.redfroggy.sample.authentication.commons.metrics.Meters;
+import fr.redfroggy.sample.authentication.commons.protocol.ChecksumAlgorithm;
 import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
-import fr.redfroggy.sample.authentication.commons.services.AbstractCommunicationService;
-import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.commons.protocol.MessageBatch;
+import fr.redfroggy.sample.authentication.commons.protocol.MessageChecksum;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.LazyBytes;
+import fr.redfroggy.sample.authentication.server.configuration.AdmissionSettings;
+import fr.redfroggy.sample.authentication.server.configuration.FileSettings;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import fr.redfroggy.sample.authentication.server.configuration.Transport;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.DataOutputStream;
+import javax.crypto.Cipher;
+import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Server service
  */
 @Slf4j
 @Service
-public class ServerService extends AbstractCommunicationService {
+public class ServerService {
+
+    /**
+     * Delay given to running sessions to terminate on shutdown (in seconds)
+     */
+    protected static final long SHUTDOWN_TIMEOUT = 10;
 
     @Autowired
     protected ServerSocket socket;
 
-    protected Socket connectionSocket;
+    @Autowired
+    protected CipherService cipherService;
+
+    @Autowired
+    protected ExecutorService sessionExecutor;
+
+    @Autowired
+    protected SocketSettings settings = new SocketSettings();
+
+    @Autowired
+    protected TicketService ticketService;
+
+    @Autowired
+    protected SessionStore sessionStore;
+
+    @Autowired
+    protected AdmissionSettings admissionSettings = new AdmissionSettings();
+
+    @Autowired
+    protected FileSettings fileSettings = new FileSettings();
+
+    /**
+     * Application processing of received messages, messages are only logged without it
+     */
+    @Autowired(required = false)
+    protected MessageHandler messageHandler;
+
+    /**
+     * Registry of server gauges (connections, sessions)
+     */
+    @Autowired
+    protected MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    protected Meters meters = Meters.SHARED;
+
+    /**
+     * Recorder of handshake phases latency
+     */
+    @Autowired
+    protected HandshakeRecorder handshakeRecorder = HandshakeRecorder.SHARED;
+
+    /**
+     * Handshake permits, bounding authentications in progress
+     */
+    protected Semaphore handshakes;
+
+    /**
+     * Number of sessions and handshakes rejected since startup
+     */
+    protected final AtomicLong rejected = new AtomicLong();
+
+    protected final Set<ServerSession> sessions = Collections.newSetFromMap(new ConcurrentHashMap<ServerSession, Boolean>());
 
-    protected byte[] challenge;
+    protected final List<SelectorLoop> selectorLoops = new ArrayList<>();
 
-    protected byte[] randomClient;
+    protected int nextSelectorLoop;
 
     /**
-     * Run server
+     * Dispatch table of commands, custom instructions can be registered in it.
+     * Built on first use, so that handlers of built-in instructions are not registered before service is constructed
+     */
+    @Getter(lazy = true)
+    private final CommandRegistry commands = registerCommands();
+
+    /**
+     * Run server: accept connections until server socket is closed.
+     * A server socket backed by a channel is served by selector event loops (NIO transport).
      */
     public void run() {
 
+        log.info("Server waiting for connections");
+        handshakes = new Semaphore(admissionSettings.getMaxHandshakes());
+        registerGauges();
         try {
-            log.info("Server waiting for connection");
-            connectionSocket = socket.accept();
-            if (connectionSocket.isConnected()) {
-                out = new DataOutputStream(connectionSocket.getOutputStream());
-                in = connectionSocket.getInputStream();
-                listen();
+            if (socket.getChannel() != null) {
+                startSelectorLoops();
             }
+            while (!socket.isClosed()) {
+                if (selectorLoops.isEmpty()) {
+                    accept();
+                } else {
+                    acceptChannel();
+                }
+            }
+        } catch (IOException e) {
+            log.error("Cannot start selector loops", e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Register gauges of server state
+     */
+    protected void registerGauges() {
+        Gauge.builder("server.connections", sessions, Set::size).register(meterRegistry);
+        Gauge.builder("server.sessions", sessionStore, SessionStore::size).register(meterRegistry);
+        Gauge.builder("server.handshakes", handshakes, semaphore -> admissionSettings.getMaxHandshakes() - semaphore.availablePermits())
+                .register(meterRegistry);
+        FunctionCounter.builder("server.rejected", rejected, AtomicLong::get).register(meterRegistry);
+    }
+
+    /**
+     * Stop server: close server socket and running sessions
+     */
+    public void stop() {
+        try {
             socket.close();
-        } catch (Exception e) {
-            log.info("Server socket closed with exception", e);
-            run();
+        } catch (IOException e) {
+            log.warn("Cannot close server socket", e);
         }
     }
 
     /**
-     * Open server socket
+     * Accept a connection and serve it in its own session
+     */
+    protected void accept() {
+
+        Socket connection;
+        try {
+            connection = socket.accept();
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                log.warn("Cannot accept connection", e);
+            }
+            return;
+        }
+
+        ServerSession session = createSession(connection);
+        if (isSaturated() && Transport.VIRTUAL == settings.getTransport()) {
+            reject(session);
+            return;
+        }
+        sessions.add(session);
+        try {
+            sessionExecutor.execute(session);
+        } catch (RejectedExecutionException e) {
+            // Session threads and waiting queue are full
+            reject(session);
+        }
+    }
+
+    /**
+     * Start selector event loops (NIO transport)
      *
-     * @throws ServerException If a transmission error occurred
+     * @throws IOException If a selector cannot be opened
      */
-    protected void listen() throws ServerException {
+    protected void startSelectorLoops() throws IOException {
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("selector-%d").build();
+        for (int i = 0; i < Math.max(1, settings.getSelectors()); i++) {
+            SelectorLoop loop = new SelectorLoop(this);
+            selectorLoops.add(loop);
+            threadFactory.newThread(loop).start();
+        }
+        log.info("{} selector loops started", selectorLoops.size());
+    }
 
-        log.info("Client " + connectionSocket.getInetAddress().toString() + " connected");
-        boolean endOfTransmission = false;
-        while (!endOfTransmission) {
-            try {
-                byte[] command = receive();
-                byte[] response = execute(command);
-                send(response, false);
-            } catch (EOTException e) {
-                log.info("End of transmission received", e);
-                endOfTransmission = true;
-            } catch (CommunicationException e) {
-                throw new ServerException("Server communication error", e);
+    /**
+     * Accept a channel and register its session in a selector loop (NIO transport)
+     */
+    protected void acceptChannel() {
+
+        SocketChannel channel;
+        try {
+            channel = socket.getChannel().accept();
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                log.warn("Cannot accept connection", e);
             }
+            return;
+        }
+
+        ServerSession session = createSession(channel.socket());
+        if (isSaturated()) {
+            reject(session);
+            return;
         }
-        log.info("Client " + connectionSocket.getInetAddress().toString() + " disconnected");
+        sessions.add(session);
+        selectorLoops.get(nextSelectorLoop++ % selectorLoops.size()).register(session);
+    }
+
+    /**
+     * Create session for an accepted connection
+     *
+     * @param connection Client connection
+     * @return Session
+     */
+    protected ServerSession createSession(Socket connection) {
+        return new ServerSession(this, connection, cipherService.copy());
+    }
+
+    /**
+     * Check if sessions limit is reached, for transports without bounded session threads
+     *
+     * @return True if no more session can be served
+     */
+    protected boolean isSaturated() {
+        return sessions.size() >= admissionSettings.getMaxSessions();
+    }
+
+    /**
+     * Reject a session beyond admission limits: client is answered "busy" and disconnected at once
+     *
+     * @param session Rejected session (connection still in blocking mode)
+     */
+    protected void reject(ServerSession session) {
+        rejected.incrementAndGet();
+        log.debug("Session {} rejected: server busy", session.getId());
+        try {
+            session.getConnection().getOutputStream().write(CommandSet.frame(CommandSet.busy()));
+        } catch (IOException e) {
+            log.debug("Cannot answer rejected session {}", session.getId(), e);
+        }
+        session.close();
+    }
+
+    /**
+     * Take a handshake permit for a session, unless it already holds one
+     *
+     * @param session Client session
+     * @return False if too many handshakes are in progress
+     */
+    protected boolean startHandshake(ServerSession session) {
+        if (session.handshake.get()) {
+            return true;
+        }
+        if (!handshakes.tryAcquire()) {
+            rejected.incrementAndGet();
+            log.debug("Handshake of session {} rejected: server busy", session.getId());
+            return false;
+        }
+        session.handshake.set(true);
+        session.handshakeStart = System.nanoTime();
+        session.handshakeAlgorithm = session.getCipherService().getAlgorithm();
+        return true;
+    }
+
+    /**
+     * Give back handshake permit of a session, if it holds one
+     *
+     * @param session Client session
+     */
+    protected void endHandshake(ServerSession session) {
+        if (releaseHandshake(session)) {
+            meters.handshake(session.handshakeAlgorithm, System.nanoTime() - session.handshakeStart);
+        }
+    }
+
+    /**
+     * Give back handshake permit of a session without recording its handshake (abandoned)
+     *
+     * @param session Client session
+     * @return True if session held a permit
+     */
+    protected boolean releaseHandshake(ServerSession session) {
+        if (session.handshake.compareAndSet(true, false)) {
+            handshakes.release();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Forget a closed session
+     *
+     * @param session Closed session
+     */
+    protected void closed(ServerSession session) {
+        sessions.remove(session);
+        if (session.getStream() != null) {
+            session.getStream().fail("Session closed");
+            session.getStream().close();
+        }
+        releaseHandshake(session);
+    }
+
+    /**
+     * Close server socket, running sessions and wait for their termination
+     */
+    protected void shutdown() {
+
+        stop();
+        sessionExecutor.shutdown();
+        for (ServerSession session : sessions) {
+            session.close();
+        }
+        for (SelectorLoop loop : selectorLoops) {
+            loop.close();
+        }
+
+        try {
+            if (!sessionExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                log.warn("Sessions still running after {} seconds", SHUTDOWN_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Server socket closed");
     }
 
     /**
      * Interpret received command from client
      *
-     * @param command Command to interpret
-     * @return Result bytes
+     * @param session Client session
+     * @param command Command to interpret, between buffer position and limit
+     * @return Result bytes, null for commands without response (message stream chunks)
      * @throws ServerException If an interpretation error occurred
      */
-    protected byte[] execute(byte[] command) throws ServerException {
+    protected byte[] execute(ServerSession session, ByteBuffer command) throws ServerException {
 
-        if (command == null || command.length == 0) {
+        if (command == null || !command.hasRemaining()) {
             return CommandSet.error("Command is empty");
         }
 
-        byte ins = command[0];
-        byte[] data = Arrays.copyOfRange(command, 1, command.length);
+        // Payload is the rest of the buffer, handed to handlers without copy
+        byte code = command.get();
 
-        switch (CommandSet.Instruction.get(ins)) {
-            case AUC:
-                return authenticateClient(data);
-            case AUS:
-                return authenticateServer(data);
-            case CLG:
-                return getChallenge();
-            case MSG:
-                return showMessage(data);
-            case STP:
-                throw new EOTException();
-            case PUB:
-                return exchangePublicKeys(data);
-            default:
-                return CommandSet.error("Unknown instruction");
+        long start = System.nanoTime();
+        byte[] response = dispatch(session, code, command);
+        meters.command(code, System.nanoTime() - start, CommandSet.isError(response));
+        return response;
+    }
+
+    /**
+     * Interpret a command with the handler registered for its instruction code
+     *
+     * @param session Client session
+     * @param code    Instruction code
+     * @param command Command payload, between buffer position and limit
+     * @return Result bytes, null for commands without response
+     * @throws ServerException If an interpretation error occurred
+     */
+    protected byte[] dispatch(ServerSession session, byte code, ByteBuffer command) throws ServerException {
+        CommandHandler handler = getCommands().get(code);
+        if (handler == null) {
+            return CommandSet.error("Unknown instruction");
         }
+        return handler.handle(session, command);
+    }
+
+    /**
+     * Create dispatch table, with handlers of built-in instructions
+     *
+     * @return Dispatch table
+     */
+    protected CommandRegistry registerCommands() {
+        CommandRegistry commands = new CommandRegistry();
+        commands.register(CommandSet.Instruction.AUC.getCode(), this::authenticateClient);
+        commands.register(CommandSet.Instruction.AUS.getCode(), this::authenticateServer);
+        commands.register(CommandSet.Instruction.CLG.getCode(), handshake((session, data) -> getChallenge(session)));
+        commands.register(CommandSet.Instruction.MSG.getCode(), this::showMessage);
+        commands.register(CommandSet.Instruction.MSQ.getCode(), this::showSequencedMessage);
+        commands.register(CommandSet.Instruction.MSB.getCode(), this::showMessages);
+        commands.register(CommandSet.Instruction.MSS.getCode(), (session, data) -> startStream(session));
+        commands.register(CommandSet.Instruction.MSC.getCode(), this::receiveChunk);
+        commands.register(CommandSet.Instruction.MSE.getCode(), this::endStream);
+        commands.register(CommandSet.Instruction.FIL.getCode(), this::startFile);
+        commands.register(CommandSet.Instruction.STP.getCode(), (session, data) -> {
+            forgetTicket(session);
+            throw new EOTException();
+        });
+        commands.register(CommandSet.Instruction.PUB.getCode(), handshake(this::exchangePublicKeys));
+        commands.register(CommandSet.Instruction.KEY.getCode(), handshake(this::transportSessionKey));
+        commands.register(CommandSet.Instruction.TKT.getCode(), (session, data) -> issueTicket(session));
+        commands.register(CommandSet.Instruction.RSM.getCode(), handshake(this::resumeSession));
+        commands.register(CommandSet.Instruction.CKS.getCode(), this::negotiateChecksum);
+        return commands;
+    }
+
+    /**
+     * Wrap the handler of a command starting a handshake, the client is answered busy if no handshake permit is free
+     *
+     * @param handler Handshake command handler
+     * @return Handler taking a handshake permit first
+     */
+    protected CommandHandler handshake(CommandHandler handler) {
+        return (session, data) -> startHandshake(session) ? handler.handle(session, data) : CommandSet.busy();
     }
 
     /**
      * Generate challenge (3Pass Authentication)
      *
+     * @param session Client session
      * @return Challenge bytes
      */
-    protected byte[] getChallenge() {
+    protected byte[] getChallenge(ServerSession session) {
+        long start = System.nanoTime();
         log.info("Generate challenge");
-        challenge = cipherService.random();
-        log.debug("challenge: {}", BytesUtils.bytesToHex(challenge, ' '));
+        byte[] challenge = session.getCipherService().random();
+        session.setChallenge(challenge);
+        log.debug("challenge: {}", LazyBytes.hex(challenge));
+        handshakeRecorder.record(HandshakePhase.CHALLENGE, System.nanoTime() - start);
         return challenge;
     }
 
     /**
      * Authenticate client (3Pass Authentication)
      *
-     * @param data Client authentication sequence
+     * @param session Client session
+     * @param data    Client authentication sequence
      * @return Result
      */
-    protected byte[] authenticateClient(byte[] data) {
+    protected byte[] authenticateClient(ServerSession session, ByteBuffer data) {
+        long start = System.nanoTime();
         try {
             log.info("Authentication Client");
-            byte[] dkData = cipherService.decode(data);
-            byte[] challengeS = Arrays.copyOfRange(dkData, cipherService.getAlgorithm().getBlocSize(), cipherService.getAlgorithm().getBlocSize() * 2);
-            byte[] challengeC = Arrays.copyOfRange(dkData, 0, cipherService.getAlgorithm().getBlocSize());
+            CipherService cipher = session.getCipherService();
+            byte[] dkData = cipher.decode(data);
+            byte[] challengeS = Arrays.copyOfRange(dkData, cipher.getAlgorithm().getBlocSize(), cipher.getAlgorithm().getBlocSize() * 2);
+            byte[] challengeC = Arrays.copyOfRange(dkData, 0, cipher.getAlgorithm().getBlocSize());
 
 
-            if (Arrays.equals(challengeS, challenge)) {
-                randomClient = challengeC;
+            if (Arrays.equals(challengeS, session.getChallenge())) {
+                session.setRandomClient(challengeC);
                 log.debug("Client verification success");
                 return CommandSet.success();
             } else {
@@ -148,40 +491,181 @@ public class ServerService extends AbstractCommunicationService {
         } catch (GeneralSecurityException e) {
             log.error("Cannot decode challenge", e);
             return CommandSet.error("Cryptographic error");
+        } finally {
+            handshakeRecorder.record(HandshakePhase.CLIENT_AUTHENTICATION, System.nanoTime() - start);
         }
     }
 
     /**
      * Authenticate server (3Pass Authentication)
      *
-     * @param data Client challenge
+     * @param session Client session
+     * @param data    Client challenge
      * @return Server authentication sequence
      */
-    protected byte[] authenticateServer(byte[] data) {
+    protected byte[] authenticateServer(ServerSession session, ByteBuffer data) {
+        long start = System.nanoTime();
         try {
             log.info("Authentication Server");
-            byte[] rndServer = cipherService.random();
-            byte[] ek = cipherService.encode(Bytes.concat(rndServer, data));
+            byte[] rndServer = session.getCipherService().random();
+            byte[] toEncode = Arrays.copyOf(rndServer, rndServer.length + data.remaining());
+            data.get(toEncode, rndServer.length, data.remaining());
+            byte[] ek = session.getCipherService().encode(toEncode);
 
-            setSessionKey(randomClient, rndServer);
+            session.setSessionKey(session.getRandomClient(), rndServer);
+            session.setAuthenticated(true);
+            endHandshake(session);
 
             return ek;
         } catch (GeneralSecurityException e) {
             log.error("Cannot decode challenge", e);
             return CommandSet.error("Cryptographic error");
+        } finally {
+            handshakeRecorder.record(HandshakePhase.SERVER_AUTHENTICATION, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Issue a resumption ticket for the session key
+     *
+     * @param session Client session
+     * @return Success followed by ticket
+     */
+    protected byte[] issueTicket(ServerSession session) {
+        if (!ticketService.isEnabled()) {
+            return CommandSet.error("Session resumption disabled");
+        }
+        if (!session.isAuthenticated()) {
+            return CommandSet.error("Session not authenticated");
+        }
+        if (Algorithm.RSA.equals(session.getCipherService().getAlgorithm()) || session.getCipherService().getPublicKey() != null) {
+            return CommandSet.error("Session resumption not available for RSA");
+        }
+
+        try {
+            CipherService cipher = session.getCipherService();
+            long ticketId = ticketService.nextId();
+            byte[] ticket = ticketService.issue(ticketId);
+            // Only the last ticket of a session resumes it
+            forgetTicket(session);
+            sessionStore.put(ticketId, cipher.getAlgorithm(), cipher.getKey());
+            session.ticketId = ticketId;
+            return CommandSet.success(ticket);
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot issue ticket", e);
+            return CommandSet.error("Cryptographic error");
+        }
+    }
+
+    /**
+     * Resume a session from a ticket, in a single exchange.
+     * Client proves it knows the ticket session key by sending a random sequence ciphered with it, server answers
+     * with its own random sequence followed by the client one, then both build a new session key from these sequences.
+     * A ticket resumes its session once, as long as the session is kept in store.
+     *
+     * @param session Client session
+     * @param data    Ticket length (2 bytes), ticket and ciphered client random sequence
+     * @return Success followed by ciphered server and client random sequences
+     */
+    protected byte[] resumeSession(ServerSession session, ByteBuffer data) {
+        if (!ticketService.isEnabled()) {
+            return CommandSet.error("Session resumption disabled");
+        }
+        if (data.remaining() < 2 || data.remaining() - 2 < (data.getShort(data.position()) & 0xFFFF)) {
+            return CommandSet.error("Missing ticket");
+        }
+
+        CipherService cipher = session.getCipherService();
+        byte[] initialKey = cipher.getKey();
+        try {
+            int ticketLength = data.getShort() & 0xFFFF;
+            long ticketId = ticketService.open(data.array(), data.arrayOffset() + data.position(), ticketLength);
+            data.position(data.position() + ticketLength);
+            SessionRecord stored = ticketId == TicketService.NONE ? null : sessionStore.get(ticketId);
+            if (stored == null || stored.getAlgorithm() != cipher.getAlgorithm()) {
+                log.info("Ticket rejected: session unknown, expired or of another algorithm");
+                return CommandSet.error("Invalid ticket");
+            }
+
+            int blocSize = cipher.getAlgorithm().getBlocSize();
+            cipher.setKey(stored.getKey());
+            // Random sequence may end with zero bytes, removed with padding
+            byte[] rndClient = Arrays.copyOf(cipher.decode(data), blocSize);
+            byte[] rndServer = cipher.random();
+            byte[] ek = cipher.encode(Bytes.concat(rndServer, rndClient));
+
+            session.setSessionKey(rndClient, rndServer);
+            session.setAuthenticated(true);
+            // Session key changed, ticket cannot be replayed
+            sessionStore.remove(ticketId);
+            endHandshake(session);
+            log.info("Session {} resumed", session.getId());
+            return CommandSet.success(ek);
+
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot resume session", e);
+            restoreKey(cipher, initialKey);
+            return CommandSet.error("Cryptographic error");
+        }
+    }
+
+    /**
+     * Remove the stored session of the last ticket issued to a session, if any
+     *
+     * @param session Client session
+     */
+    protected void forgetTicket(ServerSession session) {
+        if (session.ticketId != TicketService.NONE) {
+            sessionStore.remove(session.ticketId);
+            session.ticketId = TicketService.NONE;
+        }
+    }
+
+    /**
+     * Record activity of a session, keeping the stored session of its ticket from expiring
+     *
+     * @param session  Client session
+     * @param messages Number of received messages
+     * @param bytes    Number of received message bytes
+     */
+    protected void seen(ServerSession session, int messages, long bytes) {
+        if (session.ticketId != TicketService.NONE) {
+            sessionStore.touch(session.ticketId, messages, bytes);
+        }
+    }
+
+    /**
+     * Restore cipher key after a failed operation
+     *
+     * @param cipher Cipher
+     * @param key    Key to restore
+     */
+    protected void restoreKey(CipherService cipher, byte[] key) {
+        try {
+            cipher.setKey(key);
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot restore key", e);
         }
     }
 
     /**
      * Store client public key and return server public key
      *
-     * @param data Client public key
+     * @param session Client session
+     * @param data    Client public key
      * @return Server public key
      */
-    protected byte[] exchangePublicKeys(byte[] data) {
+    protected byte[] exchangePublicKeys(ServerSession session, ByteBuffer data) {
+        if (!Algorithm.RSA.equals(session.getCipherService().getAlgorithm())) {
+            endHandshake(session);
+            return CommandSet.error("Public keys exchange not available");
+        }
         try {
-            cipherService.setKey(data);
-            return cipherService.getKeyPair().getPublic().getEncoded();
+            byte[] publicKey = new byte[data.remaining()];
+            data.get(publicKey);
+            session.getCipherService().setKey(publicKey);
+            endHandshake(session);
+            return session.getCipherService().getKeyPair().getPublic().getEncoded();
         } catch (GeneralSecurityException e) {
             log.error("Cannot exchange public keys", e);
             return CommandSet.error("Public keys exchange error");
@@ -189,21 +673,335 @@ public class ServerService extends AbstractCommunicationService {
     }
 
     /**
-     * Display received messages
+     * Receive a session key transported with RSA, then cipher session traffic with it (hybrid mode).
+     * Client sends its random sequence ciphered with server public key, server answers with its own random sequence
+     * followed by the client one, ciphered with client public key. Both build the session key from these sequences.
      *
-     * @param data Data
-     * @return Result
+     * @param session Client session
+     * @param data    Ciphered client random sequence
+     * @return Success followed by ciphered server and client random sequences
+     */
+    protected byte[] transportSessionKey(ServerSession session, ByteBuffer data) {
+        CipherService cipher = session.getCipherService();
+        try {
+            if (!Algorithm.RSA.equals(cipher.getAlgorithm()) || cipher.getSessionAlgorithm() == null) {
+                return CommandSet.error("Hybrid mode not available");
+            }
+            if (cipher.getPublicKey() == null) {
+                return CommandSet.error("Public keys not exchanged");
+            }
+
+            int blocSize = cipher.getSessionAlgorithm().getBlocSize();
+            // Random sequence may end with zero bytes, removed with padding
+            byte[] rndClient = Arrays.copyOf(cipher.decode(data), blocSize);
+            byte[] rndServer = cipher.random(blocSize);
+            byte[] ek = cipher.encode(Bytes.concat(rndServer, rndClient));
+
+            cipher.useSessionAlgorithm();
+            session.setSessionKey(rndClient, rndServer);
+            session.setAuthenticated(true);
+            log.info("Session {} key transported, {} traffic", session.getId(), cipher.getAlgorithm());
+            return CommandSet.success(ek);
+
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot transport session key", e);
+            return CommandSet.error("Cryptographic error");
+        } finally {
+            endHandshake(session);
+        }
+    }
+
+    /**
+     * Display received message, and hand it to the message handler
+     *
+     * @param session Client session
+     * @param data    Data
+     * @return Result, null if deferred until message is processed
      */
-    protected byte[] showMessage(byte[] data) {
+    protected byte[] showMessage(ServerSession session, ByteBuffer data) {
         try {
-            log.debug("ek(message): {}", BytesUtils.bytesToHex(data, ' '));
-            byte[] message = cipherService.decode(data);
-            log.debug("message: {}", BytesUtils.bytesToHex(message, ' '));
-            log.info("Message received : " + new String(message));
-            return CommandSet.receive(BytesUtils.crc32(message));
+            byte[] message = decodeMessage(session, data);
+            return process(session, Collections.singletonList(message), CommandSet.receive(session.getChecksum().reset().update(message)));
         } catch (GeneralSecurityException e) {
             log.error("Cannot decode message", e);
             return CommandSet.error("Cryptographic error");
         }
     }
+
+    /**
+     * Display received pipelined message, acknowledgement or error is tagged with message sequence number
+     *
+     * @param session Client session
+     * @param data    Sequence number followed by encoded message
+     * @return Result, null if deferred until message is processed
+     */
+    protected byte[] showSequencedMessage(ServerSession session, ByteBuffer data) {
+        if (data.remaining() < CommandSet.SEQUENCE_SIZE) {
+            return CommandSet.error("Missing sequence number");
+        }
+
+        int sequence = data.getInt();
+        try {
+            byte[] message = decodeMessage(session, data);
+            return process(session, Collections.singletonList(message),
+                    CommandSet.receive(sequence, session.getChecksum().reset().update(message)));
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot decode message {}", sequence, e);
+            return CommandSet.error(sequence, "Cryptographic error");
+        }
+    }
+
+    /**
+     * Display a batch of received messages, decoded at once
+     *
+     * @param session Client session
+     * @param data    Encoded batch
+     * @return Result: checksum of each message, in batch order, null if deferred until messages are processed
+     */
+    protected byte[] showMessages(ServerSession session, ByteBuffer data) {
+        try {
+            log.debug("ek(batch): {}", LazyBytes.hex(data));
+            List<byte[]> messages = MessageBatch.decode(session.getCipherService().decode(data));
+
+            // Checksums are written into the acknowledgement, behind its instruction code
+            byte[] acknowledgement = new byte[1 + messages.size() * MessageChecksum.SIZE];
+            acknowledgement[0] = CommandSet.Instruction.RCV.getCode();
+            int bytes = 0;
+            for (int i = 0; i < messages.size(); i++) {
+                byte[] message = messages.get(i);
+                log.info("Message received : {}", LazyBytes.text(message));
+                session.getChecksum().reset().update(message).write(acknowledgement, 1 + i * MessageChecksum.SIZE);
+                bytes += message.length;
+            }
+            seen(session, messages.size(), bytes);
+            return process(session, messages, acknowledgement);
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot decode batch", e);
+            return CommandSet.error("Cryptographic error");
+        } catch (TransmissionException e) {
+            log.error("Cannot read batch", e);
+            return CommandSet.error("Invalid batch");
+        }
+    }
+
+    /**
+     * Select checksum algorithm of following message acknowledgements
+     *
+     * @param session Client session
+     * @param data    Algorithm code
+     * @return Result: success, or error if algorithm is not supported (previous algorithm is kept)
+     */
+    protected byte[] negotiateChecksum(ServerSession session, ByteBuffer data) {
+        if (data.remaining() != 1) {
+            return CommandSet.error("Missing checksum algorithm");
+        }
+        ChecksumAlgorithm algorithm = ChecksumAlgorithm.get(data.get());
+        if (algorithm == null) {
+            return CommandSet.error("Unsupported checksum algorithm");
+        }
+        if (!algorithm.equals(session.getChecksum().getAlgorithm())) {
+            session.setChecksum(new MessageChecksum(algorithm));
+        }
+        log.debug("Checksum algorithm: {}", algorithm);
+        return CommandSet.success();
+    }
+
+    /**
+     * Hand decoded messages to the message handler, they are acknowledged once processed
+     *
+     * @param session         Client session
+     * @param messages        Decoded messages
+     * @param acknowledgement Acknowledgement of messages
+     * @return Acknowledgement or error if processing is complete, null if it will be sent once messages are processed
+     */
+    protected byte[] process(ServerSession session, List<byte[]> messages, byte[] acknowledgement) {
+        if (messageHandler == null) {
+            return acknowledgement;
+        }
+
+        CompletableFuture<?>[] processing = new CompletableFuture<?>[messages.size()];
+        for (int i = 0; i < processing.length; i++) {
+            try {
+                processing[i] = messageHandler.handle(session, messages.get(i)).toCompletableFuture();
+            } catch (RuntimeException e) {
+                processing[i] = CompletableFuture.failedFuture(e);
+            }
+        }
+        return session.respond(CompletableFuture.allOf(processing).handle((processed, e) ->
+                e == null ? acknowledgement : processingFailed(session, acknowledgement, e)));
+    }
+
+    /**
+     * Build the error answering messages whose processing failed, tagged with message sequence number if pipelined
+     *
+     * @param session         Client session
+     * @param acknowledgement Acknowledgement of messages
+     * @param e               Processing failure
+     * @return Error, sequenced if acknowledgement is
+     */
+    protected byte[] processingFailed(ServerSession session, byte[] acknowledgement, Throwable e) {
+        log.warn("Message processing failed (session {})", session.getId(), e);
+        if (acknowledgement[0] == CommandSet.Instruction.RCQ.getCode()) {
+            return CommandSet.error(ByteBuffer.wrap(acknowledgement, 1, CommandSet.SEQUENCE_SIZE).getInt(), "Processing failed");
+        }
+        return CommandSet.error("Processing failed");
+    }
+
+    /**
+     * Start receiving a message stream, without response
+     *
+     * @param session Client session
+     * @return Null, errors are answered at end of stream
+     */
+    protected byte[] startStream(ServerSession session) {
+        try {
+            openStream(session, new MessageStream(session.getCipherService().streamCipher(Cipher.DECRYPT_MODE),
+                    new MessageChecksum(session.getChecksum().getAlgorithm())));
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot start message stream", e);
+            openStream(session, MessageStream.failed("Cryptographic error"));
+        }
+        return null;
+    }
+
+    /**
+     * Start receiving a file, its content follows as a stream (MSC chunks, then MSE).
+     * File is written into files directory, under its name without path.
+     *
+     * @param session Client session
+     * @param data    File size (8 bytes) followed by file name (UTF-8)
+     * @return Result
+     */
+    protected byte[] startFile(ServerSession session, ByteBuffer data) {
+        if (fileSettings.getDirectory() == null) {
+            return CommandSet.error("File transfer disabled");
+        }
+        if (data.remaining() < 8) {
+            return CommandSet.error("Missing file size");
+        }
+
+        long size = data.getLong();
+        Path path = filePath(new String(data.array(), data.arrayOffset() + data.position(), data.remaining(), StandardCharsets.UTF_8));
+        if (path == null || size < 0) {
+            return CommandSet.error("Invalid file");
+        }
+
+        try {
+            openStream(session, new FileStream(session.getCipherService().streamCipher(Cipher.DECRYPT_MODE),
+                    new MessageChecksum(session.getChecksum().getAlgorithm()), path, size));
+            log.info("Receive file {} ({} bytes)", path, size);
+            return CommandSet.success();
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot start file stream", e);
+            return CommandSet.error("Cryptographic error");
+        } catch (IOException e) {
+            log.error("Cannot open file {}", path, e);
+            return CommandSet.error("Cannot open file");
+        }
+    }
+
+    /**
+     * Resolve destination of a received file
+     *
+     * @param name File name sent by client
+     * @return File path in files directory, null if name is not a plain file name
+     */
+    protected Path filePath(String name) {
+        try {
+            Path fileName = Paths.get(name).getFileName();
+            if (name.isEmpty() || fileName == null || !fileName.toString().equals(name) || ".".equals(name) || "..".equals(name)) {
+                return null;
+            }
+            return Paths.get(fileSettings.getDirectory()).resolve(fileName);
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Set stream being received by a session, abandoning previous one
+     *
+     * @param session Client session
+     * @param stream  Stream
+     */
+    protected void openStream(ServerSession session, MessageStream stream) {
+        MessageStream previous = session.getStream();
+        if (previous != null) {
+            previous.fail("Stream abandoned");
+            previous.close();
+        }
+        session.setStream(stream);
+    }
+
+    /**
+     * Decipher a chunk of message stream, without response
+     *
+     * @param session Client session
+     * @param data    Ciphered chunk
+     * @return Null, errors are answered at end of stream
+     */
+    protected byte[] receiveChunk(ServerSession session, ByteBuffer data) {
+        MessageStream stream = session.getStream();
+        if (stream == null) {
+            openStream(session, MessageStream.failed("No message stream"));
+            return null;
+        }
+        try {
+            stream.update(data);
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot decode message stream chunk", e);
+            stream.fail("Cryptographic error");
+        }
+        return null;
+    }
+
+    /**
+     * End a message stream
+     *
+     * @param session Client session
+     * @param data    Padding length (1 byte) and ciphered last chunk
+     * @return Result: checksum of whole message
+     */
+    protected byte[] endStream(ServerSession session, ByteBuffer data) {
+        MessageStream stream = session.getStream();
+        session.setStream(null);
+        if (stream == null) {
+            return CommandSet.error("No message stream");
+        }
+
+        if (!data.hasRemaining()) {
+            stream.fail("Missing padding");
+        }
+        try {
+            stream.finish(data, data.hasRemaining() ? data.get() & 0xFF : 0);
+        } catch (GeneralSecurityException e) {
+            log.error("Cannot decode message stream end", e);
+            stream.fail("Cryptographic error");
+        }
+        stream.close();
+        if (stream.getError() != null) {
+            return CommandSet.error(stream.getError());
+        }
+
+        log.info("Message stream received : {} bytes", stream.getLength());
+        seen(session, 1, stream.getLength());
+        return CommandSet.receive(stream.getChecksum());
+    }
+
+    /**
+     * Decode received message
+     *
+     * @param session Client session
+     * @param data    Encoded message
+     * @return Decoded message
+     * @throws GeneralSecurityException If message cannot be decoded
+     */
+    protected byte[] decodeMessage(ServerSession session, ByteBuffer data) throws GeneralSecurityException {
+        log.debug("ek(message): {}", LazyBytes.hex(data));
+        byte[] message = session.getCipherService().decode(data);
+        log.debug("message: {}", LazyBytes.hex(message));
+        log.info("Message received : {}", LazyBytes.text(message));
+        seen(session, 1, message.length);
+        return message;
+    }
 }
@@ -0,0 +1,345 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.exceptions.EOTException;
+import fr.redfroggy.sample.authentication.commons.exceptions.ServerException;
+import fr.redfroggy.sample.authentication.commons.protocol.ChecksumAlgorithm;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.protocol.MessageChecksum;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.services.AbstractCommunicationService;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server session, holds the state of a single client connection
+ */
+@Slf4j
+public class ServerSession extends AbstractCommunicationService implements Runnable {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /**
+     * Session identifier
+     */
+    @Getter
+    protected final long id;
+
+    /**
+     * Client connection
+     */
+    @Getter
+    protected final Socket connection;
+
+    /**
+     * Service interpreting received commands
+     */
+    protected final ServerService serverService;
+
+    /**
+     * Challenge sent to client (3Pass Authentication)
+     */
+    @Getter
+    @Setter
+    protected byte[] challenge;
+
+    /**
+     * Client random sequence (3Pass Authentication)
+     */
+    @Getter
+    @Setter
+    protected byte[] randomClient;
+
+    /**
+     * Session key is set (3Pass Authentication succeeded or session resumed)
+     */
+    @Getter
+    @Setter
+    protected boolean authenticated;
+
+    /**
+     * Message stream being received, null if none
+     */
+    @Getter
+    @Setter
+    protected MessageStream stream;
+
+    /**
+     * Checksum of acknowledged messages, CRC32 until another algorithm is negotiated
+     */
+    @Getter
+    @Setter
+    protected MessageChecksum checksum = new MessageChecksum(ChecksumAlgorithm.CRC32);
+
+    /**
+     * Selector loop serving this session with NIO transport, null with blocking sockets
+     */
+    @Setter
+    protected SelectorLoop selectorLoop;
+
+    /**
+     * Guards writes to blocking connection, shared by session thread and deferred responses
+     */
+    protected final Lock writeLock = new ReentrantLock();
+
+    /**
+     * Completed once the last response is handed to the connection, following responses are chained to it so
+     * that commands are answered in order. Only accessed by the thread serving the session
+     */
+    protected CompletableFuture<Void> lastResponse = CompletableFuture.completedFuture(null);
+
+    /**
+     * Number of responses chained to lastResponse and not handed to the connection yet
+     */
+    protected final AtomicInteger deferredResponses = new AtomicInteger();
+
+    /**
+     * Id of the stored session of the last ticket issued to this session, TicketService.NONE if none
+     */
+    protected long ticketId = TicketService.NONE;
+
+    /**
+     * Session holds a handshake permit (authentication in progress)
+     */
+    protected final AtomicBoolean handshake = new AtomicBoolean();
+
+    /**
+     * Start time of handshake in progress (nanoseconds)
+     */
+    protected long handshakeStart;
+
+    /**
+     * Algorithm of handshake in progress
+     */
+    protected Algorithm handshakeAlgorithm;
+
+    /**
+     * Read timeout of blocking connection (in milliseconds), 0 for none
+     */
+    protected int readTimeout;
+
+    /**
+     * Construct session
+     *
+     * @param serverService Service interpreting received commands
+     * @param connection    Client connection
+     * @param cipherService Cipher dedicated to this session
+     */
+    public ServerSession(ServerService serverService, Socket connection, CipherService cipherService) {
+        this.id = SEQUENCE.incrementAndGet();
+        this.serverService = serverService;
+        this.connection = connection;
+        this.cipherService = cipherService;
+    }
+
+    /**
+     * Session cipher
+     *
+     * @return Cipher dedicated to this session
+     */
+    public CipherService getCipherService() {
+        return cipherService;
+    }
+
+    /**
+     * Maximum length of a received command, limited until session is authenticated or public keys are exchanged
+     *
+     * @return Maximum command length
+     */
+    @Override
+    public int maxCommandSize() {
+        return authenticated || cipherService.getPublicKey() != null ? serverService.settings.getMaxCommandSize()
+                : serverService.settings.getMaxHandshakeCommandSize();
+    }
+
+    /**
+     * Serve client until end of transmission
+     */
+    @Override
+    public void run() {
+        try {
+            if (connection.isConnected()) {
+                open(connection);
+                listen();
+            }
+        } catch (Exception e) {
+            log.info("Session {} closed with exception", id, e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Listen client commands
+     *
+     * @throws ServerException If a transmission error occurred
+     */
+    protected void listen() throws ServerException {
+
+        log.info("Client {} connected (session {})", connection.getInetAddress(), id);
+        boolean endOfTransmission = false;
+        while (!endOfTransmission) {
+            try {
+                boundHandshake();
+                ByteBuffer command = receiveBuffer();
+                try {
+                    byte[] response = order(serverService.execute(this, command));
+                    if (response != null) {
+                        writeLock.lock();
+                        try {
+                            send(response, false);
+                        } finally {
+                            writeLock.unlock();
+                        }
+                    }
+                } finally {
+                    bufferPool.release(command);
+                }
+                if (isBackedUp()) {
+                    // Next command is read once pending responses are sent
+                    lastResponse.join();
+                }
+            } catch (EOTException e) {
+                log.info("End of transmission received", e);
+                endOfTransmission = true;
+            } catch (CommunicationException e) {
+                throw new ServerException("Server communication error", e);
+            }
+        }
+        log.info("Client {} disconnected (session {})", connection.getInetAddress(), id);
+    }
+
+    /**
+     * Time left to the handshake in progress before it is abandoned
+     *
+     * @return Remaining time (in milliseconds), Long.MAX_VALUE if no handshake is in progress or handshakes have no limit
+     */
+    public long handshakeTimeLeft() {
+        long timeout = serverService.admissionSettings.getHandshakeTimeout();
+        if (timeout <= 0 || !handshake.get()) {
+            return Long.MAX_VALUE;
+        }
+        return timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - handshakeStart);
+    }
+
+    /**
+     * Bound next read of blocking connection to the time left to the handshake in progress, so that a stalled client
+     * cannot hold its handshake permit
+     *
+     * @throws ServerException If handshake time is over
+     */
+    protected void boundHandshake() throws ServerException {
+        long timeLeft = handshakeTimeLeft();
+        if (timeLeft <= 0) {
+            throw new ServerException("Handshake timed out");
+        }
+        int timeout = timeLeft == Long.MAX_VALUE ? 0 : (int) Math.min(timeLeft, Integer.MAX_VALUE);
+        if (timeout != readTimeout) {
+            try {
+                connection.setSoTimeout(timeout);
+                readTimeout = timeout;
+            } catch (SocketException e) {
+                throw new ServerException("Cannot set read timeout", e);
+            }
+        }
+    }
+
+    /**
+     * Answer a command with an asynchronous response: returned at once if already completed and no previous
+     * response is pending, otherwise sent once completed, after previous responses
+     *
+     * @param response Future response, completed with null for commands without response
+     * @return Response to send at once, null if there is none or if it is deferred
+     */
+    public byte[] respond(CompletionStage<byte[]> response) {
+        CompletableFuture<byte[]> result = response.toCompletableFuture().exceptionally(e -> {
+            log.warn("Command processing failed (session {})", id, e);
+            return CommandSet.error("Processing failed");
+        });
+        if (result.isDone() && lastResponse.isDone()) {
+            return result.join();
+        }
+        deferredResponses.incrementAndGet();
+        lastResponse = lastResponse.thenCombine(result, (previous, next) -> next).thenCompose(this::reply)
+                .whenComplete((sent, e) -> deferredResponses.decrementAndGet());
+        return null;
+    }
+
+    /**
+     * Order a response of a command after deferred responses of previous commands
+     *
+     * @param response Response of a command, null if there is none or if it is deferred
+     * @return Response to send at once, null if there is none or if it is sent after pending responses
+     */
+    public byte[] order(byte[] response) {
+        if (response == null || lastResponse.isDone()) {
+            return response;
+        }
+        deferredResponses.incrementAndGet();
+        lastResponse = lastResponse.thenCompose(previous -> reply(response))
+                .whenComplete((sent, e) -> deferredResponses.decrementAndGet());
+        return null;
+    }
+
+    /**
+     * Check if deferred responses reached their limit, commands of the session must not be read until some are sent
+     *
+     * @return True if no more command should be read
+     */
+    public boolean isBackedUp() {
+        return deferredResponses.get() >= serverService.settings.getMaxDeferredResponses();
+    }
+
+    /**
+     * Send a deferred response
+     *
+     * @param response Response, ignored if null
+     * @return Completed once response is written (blocking connection) or queued for writing (NIO transport)
+     */
+    protected CompletableFuture<Void> reply(byte[] response) {
+        // Through the loop even without response, so that it resumes reading once below deferred responses limit
+        if (selectorLoop != null) {
+            return selectorLoop.reply(this, response);
+        }
+        if (response == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        writeLock.lock();
+        try {
+            send(response, false);
+        } catch (CommunicationException e) {
+            log.info("Cannot send deferred response (session {})", id, e);
+        } finally {
+            writeLock.unlock();
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Close client connection
+     */
+    public void close() {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            log.warn("Cannot close session {}", id, e);
+        } finally {
+            serverService.closed(this);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import lombok.Getter;
+
+/**
+ * Copy of a stored session
+ */
+@Getter
+public class SessionRecord {
+
+    protected final long id;
+
+    protected final Algorithm algorithm;
+
+    protected final byte[] key;
+
+    /**
+     * Last activity time (in milliseconds)
+     */
+    protected final long lastSeen;
+
+    /**
+     * Number of received messages
+     */
+    protected final long messages;
+
+    /**
+     * Number of received message bytes
+     */
+    protected final long bytes;
+
+    public SessionRecord(long id, Algorithm algorithm, byte[] key, long lastSeen, long messages, long bytes) {
+        this.id = id;
+        this.algorithm = algorithm;
+        this.key = key;
+        this.lastSeen = lastSeen;
+        this.messages = messages;
+        this.bytes = bytes;
+    }
+}
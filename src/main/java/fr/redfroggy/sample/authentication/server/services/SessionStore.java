@@ -0,0 +1,390 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Store of resumable sessions, keyed by the id their ticket holds, kept off-heap: a million sessions take about
+ * 80 MB of direct memory, and no object per session. Sessions expire when not seen during time to live, and least recently seen
+ * sessions are evicted when store is full.
+ * <p>
+ * Store is split into segments, each locked independently. A segment holds fixed-size session slots in a direct
+ * buffer, an open addressing index (linear probing) from session id to slot, and a least recently seen list
+ * linking slots. Lookup, update and eviction run in constant time.
+ */
+public class SessionStore {
+
+    /**
+     * Maximum length of a session key
+     */
+    public static final int MAX_KEY_SIZE = 24;
+
+    // Slot layout
+    protected static final int ID = 0;
+    protected static final int LAST_SEEN = 8;
+    protected static final int MESSAGES = 16;
+    protected static final int BYTES = 24;
+    protected static final int PREVIOUS = 32;
+    protected static final int NEXT = 36;
+    protected static final int ALGORITHM = 40;
+    protected static final int KEY_LENGTH = 41;
+    protected static final int KEY = 42;
+    protected static final int SLOT_SIZE = 72;
+
+    protected static final int NONE = -1;
+
+    protected final long timeToLive;
+
+    protected final Segment[] segments;
+
+    protected final int segmentMask;
+
+    /**
+     * Construct store, its memory is allocated at once
+     *
+     * @param capacity   Maximum number of sessions
+     * @param timeToLive Time after which a session not seen expires (in milliseconds)
+     * @param segments   Number of independently locked segments (rounded up to a power of two)
+     */
+    public SessionStore(int capacity, long timeToLive, int segments) {
+        int count = Integer.highestOneBit(Math.max(segments, 1) * 2 - 1);
+        this.timeToLive = timeToLive;
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        int segmentCapacity = Math.max((capacity + count - 1) / count, 1);
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * Store a session, replacing any session with the same id
+     *
+     * @param id        Session id
+     * @param algorithm Session algorithm
+     * @param key       Session key
+     */
+    public void put(long id, Algorithm algorithm, byte[] key) {
+        if (key.length > MAX_KEY_SIZE) {
+            throw new IllegalArgumentException("Session key too long: " + key.length);
+        }
+        long hash = hash(id);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            segment.put(id, hash, algorithm, key, now());
+        }
+    }
+
+    /**
+     * Record activity of a session
+     *
+     * @param id       Session id
+     * @param messages Number of received messages
+     * @param bytes    Number of received message bytes
+     * @return False if session is unknown or expired
+     */
+    public boolean touch(long id, int messages, long bytes) {
+        long hash = hash(id);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            return segment.touch(id, hash, messages, bytes, now());
+        }
+    }
+
+    /**
+     * Get a session
+     *
+     * @param id Session id
+     * @return Copy of session, or null if session is unknown or expired
+     */
+    public SessionRecord get(long id) {
+        long hash = hash(id);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            return segment.get(id, hash, now());
+        }
+    }
+
+    /**
+     * Remove a session
+     *
+     * @param id Session id
+     * @return False if session was unknown or expired
+     */
+    public boolean remove(long id) {
+        long hash = hash(id);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            return segment.remove(id, hash, now());
+        }
+    }
+
+    /**
+     * Count stored sessions, including expired sessions not evicted yet
+     *
+     * @return Number of sessions
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Current time
+     *
+     * @return Time in milliseconds
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    protected Segment segment(long hash) {
+        return segments[(int) (hash >>> 40) & segmentMask];
+    }
+
+    /**
+     * Mix session id bits (sequential ids would cluster in the index otherwise)
+     *
+     * @param id Session id
+     * @return Hash
+     */
+    protected static long hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Segment of the store, accessed under its lock
+     */
+    protected class Segment {
+
+        protected final ByteBuffer slots;
+
+        /**
+         * Index buckets: slot number + 1, 0 for an empty bucket
+         */
+        protected final IntBuffer index;
+
+        protected final int mask;
+
+        protected int free;
+
+        protected int head = NONE;
+
+        protected int tail = NONE;
+
+        protected int size;
+
+        protected Segment(int capacity) {
+            slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+            int buckets = Integer.highestOneBit(capacity * 2 - 1) * 2;
+            index = ByteBuffer.allocateDirect(buckets * 4).asIntBuffer();
+            mask = buckets - 1;
+
+            // Free slots are chained through their next link
+            for (int slot = 0; slot < capacity; slot++) {
+                setNext(slot, slot + 1 < capacity ? slot + 1 : NONE);
+            }
+            free = 0;
+        }
+
+        protected void put(long id, long hash, Algorithm algorithm, byte[] key, long now) {
+            evictExpired(now);
+
+            int bucket = find(id, hash);
+            int slot;
+            if (bucket >= 0) {
+                slot = index.get(bucket) - 1;
+                unlink(slot);
+            } else {
+                if (free == NONE) {
+                    // Full: evict least recently seen session
+                    removeSlot(tail);
+                    bucket = find(id, hash);
+                }
+                slot = free;
+                free = next(slot);
+                index.put(-1 - bucket, slot + 1);
+                size++;
+            }
+
+            int offset = offset(slot);
+            slots.putLong(offset + ID, id);
+            slots.putLong(offset + LAST_SEEN, now);
+            slots.putLong(offset + MESSAGES, 0);
+            slots.putLong(offset + BYTES, 0);
+            slots.put(offset + ALGORITHM, (byte) algorithm.ordinal());
+            slots.put(offset + KEY_LENGTH, (byte) key.length);
+            for (int i = 0; i < key.length; i++) {
+                slots.put(offset + KEY + i, key[i]);
+            }
+            linkHead(slot);
+        }
+
+        protected boolean touch(long id, long hash, int messages, long bytes, long now) {
+            int slot = live(id, hash, now);
+            if (slot == NONE) {
+                return false;
+            }
+
+            int offset = offset(slot);
+            slots.putLong(offset + LAST_SEEN, now);
+            slots.putLong(offset + MESSAGES, slots.getLong(offset + MESSAGES) + messages);
+            slots.putLong(offset + BYTES, slots.getLong(offset + BYTES) + bytes);
+            unlink(slot);
+            linkHead(slot);
+            return true;
+        }
+
+        protected SessionRecord get(long id, long hash, long now) {
+            int slot = live(id, hash, now);
+            if (slot == NONE) {
+                return null;
+            }
+
+            int offset = offset(slot);
+            byte[] key = new byte[slots.get(offset + KEY_LENGTH)];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = slots.get(offset + KEY + i);
+            }
+            return new SessionRecord(id, Algorithm.values()[slots.get(offset + ALGORITHM)], key,
+                    slots.getLong(offset + LAST_SEEN), slots.getLong(offset + MESSAGES), slots.getLong(offset + BYTES));
+        }
+
+        protected boolean remove(long id, long hash, long now) {
+            if (live(id, hash, now) == NONE) {
+                return false;
+            }
+            removeBucket(find(id, hash));
+            return true;
+        }
+
+        /**
+         * Find slot of a live session, an expired session is removed
+         *
+         * @return Slot, or NONE
+         */
+        protected int live(long id, long hash, long now) {
+            int bucket = find(id, hash);
+            if (bucket < 0) {
+                return NONE;
+            }
+            int slot = index.get(bucket) - 1;
+            if (expired(slot, now)) {
+                removeBucket(bucket);
+                return NONE;
+            }
+            return slot;
+        }
+
+        /**
+         * Find index bucket of a session
+         *
+         * @return Bucket of the session, or (-1 - empty bucket where it would be inserted)
+         */
+        protected int find(long id, long hash) {
+            int bucket = (int) hash & mask;
+            int value;
+            while ((value = index.get(bucket)) != 0) {
+                if (slots.getLong(offset(value - 1) + ID) == id) {
+                    return bucket;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            return -1 - bucket;
+        }
+
+        /**
+         * Remove a session from index, list, and give its slot back
+         */
+        protected void removeBucket(int bucket) {
+            int slot = index.get(bucket) - 1;
+            unlink(slot);
+            setNext(slot, free);
+            free = slot;
+            size--;
+
+            // Shift back following entries of the probe sequence, so lookups need no tombstone
+            int hole = bucket;
+            int next = (bucket + 1) & mask;
+            int value;
+            while ((value = index.get(next)) != 0) {
+                int ideal = (int) hash(slots.getLong(offset(value - 1) + ID)) & mask;
+                if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                    index.put(hole, value);
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            index.put(hole, 0);
+        }
+
+        /**
+         * Remove expired sessions, starting from least recently seen
+         */
+        protected void evictExpired(long now) {
+            while (tail != NONE && expired(tail, now)) {
+                removeSlot(tail);
+            }
+        }
+
+        protected void removeSlot(int slot) {
+            long id = slots.getLong(offset(slot) + ID);
+            removeBucket(find(id, hash(id)));
+        }
+
+        protected boolean expired(int slot, long now) {
+            return now - slots.getLong(offset(slot) + LAST_SEEN) > timeToLive;
+        }
+
+        protected void linkHead(int slot) {
+            setPrevious(slot, NONE);
+            setNext(slot, head);
+            if (head != NONE) {
+                setPrevious(head, slot);
+            }
+            head = slot;
+            if (tail == NONE) {
+                tail = slot;
+            }
+        }
+
+        protected void unlink(int slot) {
+            int previous = slots.getInt(offset(slot) + PREVIOUS);
+            int next = next(slot);
+            if (previous != NONE) {
+                setNext(previous, next);
+            } else {
+                head = next;
+            }
+            if (next != NONE) {
+                setPrevious(next, previous);
+            } else {
+                tail = previous;
+            }
+        }
+
+        protected int next(int slot) {
+            return slots.getInt(offset(slot) + NEXT);
+        }
+
+        protected void setNext(int slot, int next) {
+            slots.putInt(offset(slot) + NEXT, next);
+        }
+
+        protected void setPrevious(int slot, int previous) {
+            slots.putInt(offset(slot) + PREVIOUS, previous);
+        }
+
+        protected int offset(int slot) {
+            return slot * SLOT_SIZE;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherProvider;
+import fr.redfroggy.sample.authentication.server.configuration.TicketSettings;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session resumption tickets.
+ * A ticket holds the id of a session kept in the {@link SessionStore} and its expiry, ciphered and authenticated with
+ * keys known by this server only, so a client cannot forge the id of another session. Session key stays on server.
+ * Keys are generated at startup: tickets do not survive a restart.
+ * Ticket layout: init vector (16 bytes), ciphered content, MAC (32 bytes).
+ * Content layout: expiry (8 bytes), session id (8 bytes).
+ */
+@Slf4j
+@Service
+public class TicketService {
+
+    /**
+     * Id of no session, never issued
+     */
+    public static final long NONE = 0;
+
+    protected static final int IV_SIZE = 16;
+
+    protected static final int CONTENT_SIZE = 16;
+
+    protected static final int MAC_SIZE = 32;
+
+    protected static final String MAC_ALGORITHM = "HmacSHA256";
+
+    @Autowired
+    protected TicketSettings settings;
+
+    protected final SecretKey cipherKey;
+
+    protected final SecretKey macKey;
+
+    protected final SecureRandom random = new SecureRandom();
+
+    /**
+     * MAC initialized with ticket MAC key, per thread
+     */
+    protected final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(macKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot initialize ticket MAC", e);
+            }
+        }
+    };
+
+    /**
+     * Construct service, with new ticket keys
+     *
+     * @throws NoSuchAlgorithmException If ticket algorithms are not available
+     */
+    public TicketService() throws NoSuchAlgorithmException {
+        KeyGenerator cipherKeyGenerator = KeyGenerator.getInstance(Algorithm.AES.getKeyAlgorithm());
+        cipherKeyGenerator.init(128);
+        cipherKey = cipherKeyGenerator.generateKey();
+        macKey = KeyGenerator.getInstance(MAC_ALGORITHM).generateKey();
+    }
+
+    /**
+     * Check if session resumption is enabled
+     *
+     * @return True if tickets are issued
+     */
+    public boolean isEnabled() {
+        return settings.getLifetime() > 0;
+    }
+
+    /**
+     * Draw the id of a new stored session
+     *
+     * @return Random id, never NONE
+     */
+    public long nextId() {
+        long id;
+        do {
+            id = random.nextLong();
+        } while (id == NONE);
+        return id;
+    }
+
+    /**
+     * Issue a ticket for a stored session
+     *
+     * @param id Session id in store
+     * @return Ticket
+     * @throws GeneralSecurityException If a cryptographic error occurred
+     */
+    public byte[] issue(long id) throws GeneralSecurityException {
+        long expiry = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(settings.getLifetime());
+        byte[] content = ByteBuffer.allocate(CONTENT_SIZE).putLong(expiry).putLong(id).array();
+
+        byte[] iv = new byte[IV_SIZE];
+        random.nextBytes(iv);
+        byte[] ciphered = CipherProvider.SHARED.get(Algorithm.AES, Cipher.ENCRYPT_MODE, cipherKey, new IvParameterSpec(iv)).doFinal(content);
+
+        ByteBuffer ticket = ByteBuffer.allocate(IV_SIZE + ciphered.length + MAC_SIZE);
+        ticket.put(iv).put(ciphered);
+        ticket.put(mac(ticket.array(), 0, IV_SIZE + ciphered.length));
+        return ticket.array();
+    }
+
+    /**
+     * Open a ticket
+     *
+     * @param ticket Buffer holding ticket
+     * @param offset Ticket offset
+     * @param length Ticket length
+     * @return Session id in store, or NONE if ticket is invalid or expired
+     * @throws GeneralSecurityException If a cryptographic error occurred
+     */
+    public long open(byte[] ticket, int offset, int length) throws GeneralSecurityException {
+        int cipheredSize = length - IV_SIZE - MAC_SIZE;
+        if (cipheredSize != CONTENT_SIZE) {
+            log.info("Ticket rejected: invalid length");
+            return NONE;
+        }
+
+        byte[] expectedMac = mac(ticket, offset, IV_SIZE + cipheredSize);
+        byte[] mac = Arrays.copyOfRange(ticket, offset + IV_SIZE + cipheredSize, offset + length);
+        if (!MessageDigest.isEqual(expectedMac, mac)) {
+            log.info("Ticket rejected: invalid MAC");
+            return NONE;
+        }
+
+        IvParameterSpec iv = new IvParameterSpec(ticket, offset, IV_SIZE);
+        ByteBuffer content = ByteBuffer.wrap(CipherProvider.SHARED.get(Algorithm.AES, Cipher.DECRYPT_MODE, cipherKey, iv)
+                .doFinal(ticket, offset + IV_SIZE, cipheredSize));
+
+        if (content.getLong() < System.currentTimeMillis()) {
+            log.info("Ticket rejected: expired");
+            return NONE;
+        }
+        return content.getLong();
+    }
+
+    protected byte[] mac(byte[] data, int offset, int length) {
+        // doFinal resets MAC for next use
+        Mac mac = macs.get();
+        mac.update(data, offset, length);
+        return mac.doFinal();
+    }
+}
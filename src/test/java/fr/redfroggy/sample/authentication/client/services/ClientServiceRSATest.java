@@ -1,8 +1,10 @@
 package fr.redfroggy.sample.authentication.client.services;
 
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
 import fr.redfroggy.sample.authentication.commons.security.Algorithm;
 import fr.redfroggy.sample.authentication.commons.security.CipherService;
 import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,9 +12,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.runners.MockitoJUnitRunner;
-import org.mockito.stubbing.Answer;
+import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.*;
@@ -34,11 +34,7 @@ public class ClientServiceRSATest {
     @Mock
     protected Socket socket;
 
-    @Mock
-    protected OutputStream outputStream;
-
-    @Mock
-    protected InputStream inputStream;
+    protected ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
     @Mock
     protected BufferedReader messageInput;
@@ -49,7 +45,6 @@ public class ClientServiceRSATest {
     @Before
     public void init() throws Exception {
         Mockito.when(socket.getOutputStream()).thenReturn(outputStream);
-        Mockito.when(socket.getInputStream()).thenReturn(inputStream);
 
         ReflectionTestUtils.setField(cipher, "keyPair", getKeyPair());
     }
@@ -82,15 +77,12 @@ public class ClientServiceRSATest {
         return keyFactory.generatePrivate(privateKeySpec);
     }
 
-    protected Answer<Integer> inputStreamAnswer(final byte[] data) {
-        return new Answer<Integer>() {
-            @Override
-            public Integer answer(InvocationOnMock invocation) throws Throwable {
-                Object[] args = invocation.getArguments();
-                System.arraycopy(data, 0, args[0], 0, data.length);
-                return data.length;
-            }
-        };
+    protected InputStream frames(byte[]... commands) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] command : commands) {
+            stream.write(CommandSet.frame(command));
+        }
+        return new ByteArrayInputStream(stream.toByteArray());
     }
 
     @Test
@@ -101,15 +93,11 @@ public class ClientServiceRSATest {
         /**
          * Server responses
          */
-        Mockito.when(inputStream.read(new byte[64]))
+        Mockito.when(socket.getInputStream()).thenReturn(frames(
                 // Get server public key
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(serverKey, 0, 64)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(serverKey, 64, 128)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(serverKey, 128, 192)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(serverKey, 192, 256)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(serverKey, 256, 294)))
+                serverKey,
                 // Acknowledge
-                .thenAnswer(inputStreamAnswer(BytesUtils.hexToBytes("30A98817BF")));
+                BytesUtils.hexToBytes("30A98817BF")));
 
         /**
          * User message
@@ -122,8 +110,10 @@ public class ClientServiceRSATest {
 
         service.run();
 
-        Mockito.verify(outputStream).write(BytesUtils.hexToBytes("14 30 82 01 22 30 0D 06 09 2A 86 48 86 F7 0D 01 01 01 05 00 03 82 01 0F 00 30 82 01 0A 02 82 01 01 00 AB 2A 0A 77 DC 13 4C C9 23 C9 D0 24 4F 73 97 1D 89 A7 95 69 A5 D2 64 FC DA 41 22 51 BA 3E 7A A3 25 BB C0 61 6F 96 BE 61 EA 9E 49 77 E4 92 62 48 83 C4 AE F7 F4 35 AB AA FC B2 6B 76 E2 45 21 8C DB 06 C7 7F A3 DE AE A4 AC D8 CC 93 E9 A0 40 EE 78 32 99 40 C6 10 A2 04 00 E1 82 18 70 E0 38 D0 4D 11 B9 36 94 8D 31 18 56 99 65 89 C5 95 00 4A 5E 65 4D 73 1B D5 DF 79 3A 3D 76 03 30 A5 CF E4 27 79 01 0E 65 F6 A1 A3 AE 57 58 A5 4C EC AA 87 5C E6 D9 D4 E0 DA 85 82 A7 8F 28 19 F9 CC 5D 12 DA 14 6C 0E 22 13 5F 20 F4 9E 4C D2 6D 20 88 1A 14 FF 16 E5 3A D1 08 4C EF 56 26 09 68 20 84 2F E3 7C 1B 50 F1 F5 75 3F DE 43 37 B4 CF 28 E1 66 5B 84 04 16 C1 57 35 5C 58 E2 A8 0D 43 D5 1A 17 08 0F 19 05 8A C0 C8 C5 82 5E E6 21 65 25 0D CC E9 FF 16 37 2F 47 AC A2 F1 E8 10 D4 38 66 A0 93 02 03 01 00 01"), 0, 295);
-        Mockito.verify(outputStream).write(Mockito.any(byte[].class), Mockito.eq(0), Mockito.eq(257));
+        byte[] sent = outputStream.toByteArray();
+        Assert.assertArrayEquals(BytesUtils.hexToBytes("00 00 01 27 14 30 82 01 22 30 0D 06 09 2A 86 48 86 F7 0D 01 01 01 05 00 03 82 01 0F 00 30 82 01 0A 02 82 01 01 00 AB 2A 0A 77 DC 13 4C C9 23 C9 D0 24 4F 73 97 1D 89 A7 95 69 A5 D2 64 FC DA 41 22 51 BA 3E 7A A3 25 BB C0 61 6F 96 BE 61 EA 9E 49 77 E4 92 62 48 83 C4 AE F7 F4 35 AB AA FC B2 6B 76 E2 45 21 8C DB 06 C7 7F A3 DE AE A4 AC D8 CC 93 E9 A0 40 EE 78 32 99 40 C6 10 A2 04 00 E1 82 18 70 E0 38 D0 4D 11 B9 36 94 8D 31 18 56 99 65 89 C5 95 00 4A 5E 65 4D 73 1B D5 DF 79 3A 3D 76 03 30 A5 CF E4 27 79 01 0E 65 F6 A1 A3 AE 57 58 A5 4C EC AA 87 5C E6 D9 D4 E0 DA 85 82 A7 8F 28 19 F9 CC 5D 12 DA 14 6C 0E 22 13 5F 20 F4 9E 4C D2 6D 20 88 1A 14 FF 16 E5 3A D1 08 4C EF 56 26 09 68 20 84 2F E3 7C 1B 50 F1 F5 75 3F DE 43 37 B4 CF 28 E1 66 5B 84 04 16 C1 57 35 5C 58 E2 A8 0D 43 D5 1A 17 08 0F 19 05 8A C0 C8 C5 82 5E E6 21 65 25 0D CC E9 FF 16 37 2F 47 AC A2 F1 E8 10 D4 38 66 A0 93 02 03 01 00 01"), Arrays.copyOfRange(sent, 0, 299));
+        Assert.assertArrayEquals(BytesUtils.hexToBytes("00 00 01 01 20"), Arrays.copyOfRange(sent, 299, 304));
+        Assert.assertEquals(299 + 261, sent.length);
 
         Mockito.verify(socket, Mockito.times(1)).close();
     }
@@ -0,0 +1,145 @@
+package fr.redfroggy.sample.authentication.client.services;
+
+import fr.redfroggy.sample.authentication.commons.exceptions.AuthenticationException;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import fr.redfroggy.sample.authentication.server.configuration.TicketSettings;
+import fr.redfroggy.sample.authentication.server.services.ServerService;
+import fr.redfroggy.sample.authentication.server.services.SessionStore;
+import fr.redfroggy.sample.authentication.server.services.TicketService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClientServiceResumptionTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected ServerService server = new ServerService();
+
+    protected ServerSocket serverSocket;
+
+    protected Thread serverThread;
+
+    protected SessionStore sessionStore = new SessionStore(16, 60000, 1);
+
+    @Before
+    public void init() throws Exception {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        TicketService ticketService = new TicketService();
+        ReflectionTestUtils.setField(ticketService, "settings", new TicketSettings());
+
+        ReflectionTestUtils.setField(server, "socket", serverSocket);
+        ReflectionTestUtils.setField(server, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+        ReflectionTestUtils.setField(server, "sessionExecutor", Executors.newCachedThreadPool());
+        ReflectionTestUtils.setField(server, "settings", new SocketSettings());
+        ReflectionTestUtils.setField(server, "sessionStore", sessionStore);
+        ReflectionTestUtils.setField(server, "ticketService", ticketService);
+
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.run();
+            }
+        });
+        serverThread.start();
+    }
+
+    @After
+    public void stop() throws Exception {
+        server.stop();
+        serverThread.join(5000);
+        Assert.assertFalse(serverThread.isAlive());
+    }
+
+    protected ClientService client() throws Exception {
+        Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        return Mockito.spy(new ClientService(socket, new CipherService(Algorithm.AES, KEY_AES)));
+    }
+
+    @Test
+    public void connect_Resumed() throws Exception {
+        ClientService first = client();
+        first.connect();
+        SessionTicket ticket = first.requestTicket();
+        Assert.assertTrue(first.sendMessage("First connection"));
+        first.socket.close();
+
+        ClientService second = client();
+        second.connect(ticket);
+        Assert.assertTrue(second.sendMessage("Second connection"));
+        Mockito.verify(second, Mockito.never()).authenticate();
+
+        // Ticket of a resumed session resumes again
+        SessionTicket next = second.requestTicket();
+        second.socket.close();
+
+        ClientService third = client();
+        third.connect(next);
+        Assert.assertTrue(third.sendMessage("Third connection"));
+        Mockito.verify(third, Mockito.never()).authenticate();
+        third.socket.close();
+    }
+
+    @Test
+    public void connect_TicketReplayed() throws Exception {
+        ClientService first = client();
+        first.connect();
+        SessionTicket ticket = first.requestTicket();
+        Assert.assertEquals(1, sessionStore.size());
+        first.socket.close();
+
+        ClientService second = client();
+        second.connect(ticket);
+        Mockito.verify(second, Mockito.never()).authenticate();
+        Assert.assertEquals(0, sessionStore.size());
+        second.socket.close();
+
+        // Ticket resumes its session once
+        ClientService third = client();
+        third.connect(ticket);
+        Assert.assertTrue(third.sendMessage("Authenticated again"));
+        Mockito.verify(third, Mockito.times(1)).authenticate();
+        third.socket.close();
+    }
+
+    @Test
+    public void connect_InvalidTicket() throws Exception {
+        ClientService first = client();
+        first.connect();
+        SessionTicket ticket = first.requestTicket();
+        first.socket.close();
+        ticket.getTicket()[0] ^= 0x01;
+
+        ClientService second = client();
+        second.connect(ticket);
+        Assert.assertTrue(second.sendMessage("Authenticated again"));
+        Mockito.verify(second, Mockito.times(1)).authenticate();
+        second.socket.close();
+    }
+
+    @Test(expected = AuthenticationException.class)
+    public void requestTicket_NotAuthenticated() throws Exception {
+        ClientService client = client();
+        ReflectionTestUtils.invokeMethod(client, "open", client.socket);
+        try {
+            client.requestTicket();
+        } finally {
+            client.socket.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package fr.redfroggy.sample.authentication.client.services;
+
+import fr.redfroggy.sample.authentication.client.configuration.LoadSettings;
+import fr.redfroggy.sample.authentication.client.configuration.SocketSettings;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.services.ServerService;
+import fr.redfroggy.sample.authentication.server.services.SessionStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.Executors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LoadGeneratorTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected ServerService server = new ServerService();
+
+    protected ServerSocket serverSocket;
+
+    protected Thread serverThread;
+
+    protected LoadSettings loadSettings = new LoadSettings();
+
+    protected LoadGenerator generator = new LoadGenerator();
+
+    @Before
+    public void init() throws Exception {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        ReflectionTestUtils.setField(server, "socket", serverSocket);
+        ReflectionTestUtils.setField(server, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+        ReflectionTestUtils.setField(server, "sessionExecutor", Executors.newCachedThreadPool());
+        ReflectionTestUtils.setField(server, "settings", new fr.redfroggy.sample.authentication.server.configuration.SocketSettings());
+        ReflectionTestUtils.setField(server, "sessionStore", new SessionStore(16, 60000, 1));
+
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.run();
+            }
+        });
+        serverThread.start();
+
+        SocketSettings socketSettings = new SocketSettings();
+        socketSettings.setHost(serverSocket.getInetAddress().getHostAddress());
+        socketSettings.setPort(serverSocket.getLocalPort());
+
+        ReflectionTestUtils.setField(generator, "loadSettings", loadSettings);
+        ReflectionTestUtils.setField(generator, "socketSettings", socketSettings);
+        ReflectionTestUtils.setField(generator, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+    }
+
+    @After
+    public void stop() throws Exception {
+        server.stop();
+        serverThread.join(5000);
+        Assert.assertFalse(serverThread.isAlive());
+    }
+
+    @Test
+    public void run_Nominal() {
+        loadSettings.setConnections(4);
+        loadSettings.setMessages(5);
+        loadSettings.setRate(0);
+
+        LoadReport report = generator.run();
+
+        Assert.assertEquals(4, report.getHandshakes());
+        Assert.assertEquals(20, report.getMessages());
+        Assert.assertEquals(0, report.getErrors());
+        Assert.assertTrue(report.getHandshakePercentile(50) > 0);
+        Assert.assertTrue(report.getThroughput() > 0);
+    }
+
+    @Test
+    public void run_Pipelined() {
+        loadSettings.setConnections(3);
+        loadSettings.setMessages(50);
+        loadSettings.setRate(0);
+        loadSettings.setPipeline(8);
+
+        LoadReport report = generator.run();
+
+        Assert.assertEquals(3, report.getHandshakes());
+        Assert.assertEquals(150, report.getMessages());
+        Assert.assertEquals(0, report.getErrors());
+    }
+
+    @Test
+    public void run_Batched() {
+        loadSettings.setConnections(2);
+        loadSettings.setMessages(25);
+        loadSettings.setRate(0);
+        loadSettings.setBatch(10);
+
+        LoadReport report = generator.run();
+
+        Assert.assertEquals(2, report.getHandshakes());
+        Assert.assertEquals(50, report.getMessages());
+        Assert.assertEquals(0, report.getErrors());
+    }
+
+    @Test
+    public void run_WrongKey() {
+        loadSettings.setConnections(2);
+        loadSettings.setMessages(5);
+        ReflectionTestUtils.setField(generator, "cipherService", new CipherService(Algorithm.AES, new byte[16]));
+
+        LoadReport report = generator.run();
+
+        Assert.assertEquals(0, report.getHandshakes());
+        Assert.assertEquals(0, report.getMessages());
+        Assert.assertEquals(2, report.getErrors());
+        Assert.assertEquals(0, report.getHandshakePercentile(99));
+    }
+
+    @Test
+    public void report_Percentiles() {
+        LoadReport report = new LoadReport(5);
+        for (int i = 0; i < 4; i++) {
+            report.handshake(i, (4 - i) * 1000);
+        }
+        report.error();
+
+        Assert.assertEquals(4, report.getHandshakes());
+        Assert.assertEquals(2000, report.getHandshakePercentile(50));
+        Assert.assertEquals(4000, report.getHandshakePercentile(99));
+        Assert.assertEquals(1000, report.getHandshakePercentile(0));
+        Assert.assertEquals(1, report.getErrors());
+    }
+}
@@ -0,0 +1,78 @@
+package fr.redfroggy.sample.authentication.client.services;
+
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.protocol.ChecksumAlgorithm;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.protocol.MessageChecksum;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MessagePipelineTest {
+
+    protected final MessageChecksum checksum = new MessageChecksum(ChecksumAlgorithm.CRC32C);
+
+    @Mock
+    protected ClientService client;
+
+    @Before
+    public void init() {
+        Mockito.when(client.getChecksum()).thenReturn(checksum);
+    }
+
+    protected byte[] acknowledge(int sequence, String message) {
+        return CommandSet.receive(sequence, new MessageChecksum(ChecksumAlgorithm.CRC32C).update(message.getBytes()));
+    }
+
+    @Test
+    public void submit_AcknowledgedOutOfOrder() throws Exception {
+        Mockito.when(client.receiveAcknowledgement())
+                .thenReturn(acknowledge(1, "Second"))
+                .thenReturn(CommandSet.error(2, "Processing failed"))
+                .thenReturn(acknowledge(0, "First"));
+
+        MessagePipeline pipeline = new MessagePipeline(client, 4);
+        CompletableFuture<Boolean> first = pipeline.submit("First");
+        CompletableFuture<Boolean> second = pipeline.submit("Second");
+        CompletableFuture<Boolean> third = pipeline.submit("Third");
+        pipeline.close();
+
+        Assert.assertTrue(first.get(1, TimeUnit.SECONDS));
+        Assert.assertTrue(second.get(1, TimeUnit.SECONDS));
+        // Error is matched to the message it names
+        Assert.assertFalse(third.get(1, TimeUnit.SECONDS));
+        Mockito.verify(client).writeMessage(2, "Third".getBytes());
+    }
+
+    @Test(timeout = 5000)
+    public void close_UnexpectedAcknowledgement() throws Exception {
+        Mockito.when(client.receiveAcknowledgement())
+                .thenReturn(acknowledge(7, "First"))
+                .thenReturn(acknowledge(1, "Second"));
+
+        MessagePipeline pipeline = new MessagePipeline(client, 4);
+        CompletableFuture<Boolean> first = pipeline.submit("First");
+        CompletableFuture<Boolean> second = pipeline.submit("Second");
+        // Reader fails pipeline on an unknown sequence number, close must not wait for it forever
+        pipeline.close();
+
+        for (CompletableFuture<Boolean> future : Arrays.asList(first, second)) {
+            try {
+                future.get();
+                Assert.fail("Message should have failed");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof CommunicationException);
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package fr.redfroggy.sample.authentication.commons.protocol;
 
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
 import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.ByteBuffer;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CommandSetTest {
@@ -25,6 +28,15 @@ public class CommandSetTest {
         Assert.assertArrayEquals(expected, cmd);
     }
 
+    @Test
+    public void instruction_Get() {
+        for (CommandSet.Instruction instruction : CommandSet.Instruction.values()) {
+            Assert.assertEquals(instruction, CommandSet.Instruction.get(instruction.getCode()));
+        }
+        Assert.assertEquals(CommandSet.Instruction.UKW, CommandSet.Instruction.get((byte) 0x40));
+        Assert.assertEquals(CommandSet.Instruction.UKW, CommandSet.Instruction.get((byte) 0xFE));
+    }
+
     @Test
     public void getChallenge() {
         byte[] expected = BytesUtils.hexToBytes("13");
@@ -40,6 +52,28 @@ public class CommandSetTest {
         Assert.assertArrayEquals(expected, cmd);
     }
 
+    @Test
+    public void receive_Sequenced() {
+        byte[] expected = BytesUtils.hexToBytes("31:00:01:02:03:56:54");
+        byte[] crc = BytesUtils.hexToBytes("56:54");
+        byte[] cmd = CommandSet.receive(0x00010203, crc);
+        Assert.assertArrayEquals(expected, cmd);
+    }
+
+    @Test
+    public void receive_Checksum() {
+        byte[] expected = BytesUtils.hexToBytes("30:D9:C6:0B:34");
+        byte[] cmd = CommandSet.receive(new MessageChecksum(ChecksumAlgorithm.CRC32).update("123456789".getBytes()));
+        Assert.assertArrayEquals(expected, cmd);
+    }
+
+    @Test
+    public void receive_SequencedChecksum() {
+        byte[] expected = BytesUtils.hexToBytes("31:00:01:02:03:D9:C6:0B:34");
+        byte[] cmd = CommandSet.receive(0x00010203, new MessageChecksum(ChecksumAlgorithm.CRC32).update("123456789".getBytes()));
+        Assert.assertArrayEquals(expected, cmd);
+    }
+
     @Test
     public void sendMessage() {
         byte[] expected = BytesUtils.hexToBytes("20:56:54:56:54:56:54:56:54:56:54");
@@ -69,4 +103,24 @@ public class CommandSetTest {
         byte[] cmd = CommandSet.error(error);
         Assert.assertArrayEquals(expected, cmd);
     }
+
+    @Test
+    public void frame() {
+        byte[] expected = BytesUtils.hexToBytes("00:00:00:03:20:56:54");
+        byte[] cmd = CommandSet.frame(BytesUtils.hexToBytes("20:56:54"));
+        Assert.assertArrayEquals(expected, cmd);
+    }
+
+    @Test
+    public void encode() {
+        byte[] expected = BytesUtils.hexToBytes("00:00:00:03:20:56:54");
+        ByteBuffer buffer = ByteBuffer.allocate(CommandSet.frameSize(2));
+        CommandSet.encode(buffer, CommandSet.Instruction.MSG, BytesUtils.hexToBytes("56:54"));
+        Assert.assertArrayEquals(expected, buffer.array());
+    }
+
+    @Test(expected = CommunicationException.class)
+    public void checkLength_Negative() throws Exception {
+        CommandSet.checkLength(-1);
+    }
 }
@@ -0,0 +1,69 @@
+package fr.redfroggy.sample.authentication.commons.protocol;
+
+import com.google.common.primitives.Bytes;
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.ByteBuffer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FrameDecoderTest {
+
+    protected FrameDecoder decoder = new FrameDecoder();
+
+    @Test
+    public void decode_Split() throws Exception {
+        byte[] command = BytesUtils.hexToBytes("20:56:54:56:54");
+        byte[] frame = CommandSet.frame(command);
+
+        Assert.assertNull(decoder.decode(ByteBuffer.wrap(frame, 0, 2)));
+        Assert.assertTrue(decoder.isPending());
+        Assert.assertNull(decoder.decode(ByteBuffer.wrap(frame, 2, 4)));
+        Assert.assertArrayEquals(command, bytes(decoder.decode(ByteBuffer.wrap(frame, 6, frame.length - 6))));
+        Assert.assertFalse(decoder.isPending());
+    }
+
+    @Test
+    public void decode_Coalesced() throws Exception {
+        byte[] first = BytesUtils.hexToBytes("13");
+        byte[] second = BytesUtils.hexToBytes("20:56:54");
+        ByteBuffer input = ByteBuffer.wrap(Bytes.concat(CommandSet.frame(first), CommandSet.frame(second)));
+
+        Assert.assertArrayEquals(first, bytes(decoder.decode(input)));
+        Assert.assertArrayEquals(second, bytes(decoder.decode(input)));
+        Assert.assertNull(decoder.decode(input));
+    }
+
+    @Test(expected = CommunicationException.class)
+    public void decode_InvalidLength() throws Exception {
+        decoder.decode(ByteBuffer.wrap(BytesUtils.hexToBytes("FF:FF:FF:FF")));
+    }
+
+    @Test
+    public void decode_Grown() throws Exception {
+        byte[] command = new byte[3 * CommandSet.RECEIVE_CHUNK_SIZE];
+        command[command.length - 1] = 0x7F;
+        byte[] frame = CommandSet.frame(command);
+
+        // Announced length alone does not allocate the whole command
+        Assert.assertNull(decoder.decode(ByteBuffer.wrap(frame, 0, 10)));
+        Assert.assertEquals(CommandSet.RECEIVE_CHUNK_SIZE, decoder.command.capacity());
+
+        Assert.assertArrayEquals(command, bytes(decoder.decode(ByteBuffer.wrap(frame, 10, frame.length - 10))));
+    }
+
+    @Test(expected = CommunicationException.class)
+    public void decode_BeyondMaxLength() throws Exception {
+        decoder.decode(ByteBuffer.wrap(CommandSet.frame(new byte[1025])), 1024);
+    }
+
+    protected byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
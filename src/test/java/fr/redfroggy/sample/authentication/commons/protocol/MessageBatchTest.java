@@ -0,0 +1,43 @@
+package fr.redfroggy.sample.authentication.commons.protocol;
+
+import fr.redfroggy.sample.authentication.commons.exceptions.TransmissionException;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MessageBatchTest {
+
+    @Test
+    public void encode() {
+        byte[] expected = BytesUtils.hexToBytes("00:02:00:02:56:54:00:01:00:80");
+        byte[] batch = MessageBatch.encode(Arrays.asList(BytesUtils.hexToBytes("56:54"), BytesUtils.hexToBytes("00")));
+        Assert.assertArrayEquals(expected, batch);
+    }
+
+    @Test
+    public void decode_PaddingTrimmed() throws Exception {
+        // Last message ends with zero bytes, which are kept thanks to end mark
+        byte[] batch = MessageBatch.encode(Arrays.asList(BytesUtils.hexToBytes("56:54"), BytesUtils.hexToBytes("10:00:00")));
+        List<byte[]> messages = MessageBatch.decode(BytesUtils.unpad(BytesUtils.pad(batch, 16)));
+
+        Assert.assertEquals(2, messages.size());
+        Assert.assertArrayEquals(BytesUtils.hexToBytes("56:54"), messages.get(0));
+        Assert.assertArrayEquals(BytesUtils.hexToBytes("10:00:00"), messages.get(1));
+    }
+
+    @Test(expected = TransmissionException.class)
+    public void decode_Truncated() throws Exception {
+        MessageBatch.decode(BytesUtils.hexToBytes("00:02:00:02:56:54:00:01"));
+    }
+
+    @Test(expected = TransmissionException.class)
+    public void decode_MissingEndMark() throws Exception {
+        MessageBatch.decode(BytesUtils.hexToBytes("00:01:00:02:56:54"));
+    }
+}
@@ -0,0 +1,52 @@
+package fr.redfroggy.sample.authentication.commons.protocol;
+
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.ByteBuffer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MessageChecksumTest {
+
+    protected static final byte[] DATA = "123456789".getBytes();
+
+    @Test
+    public void write_CRC32() {
+        MessageChecksum checksum = new MessageChecksum(ChecksumAlgorithm.CRC32).update(DATA);
+        // CRC32 check value: CBF43926, complemented, least significant byte first
+        Assert.assertArrayEquals(BytesUtils.hexToBytes("D9 C6 0B 34"), checksum.get());
+
+        byte[] acknowledgement = new byte[1 + MessageChecksum.SIZE];
+        checksum.write(acknowledgement, 1);
+        Assert.assertTrue(checksum.matches(acknowledgement, 1));
+        Assert.assertFalse(checksum.matches(acknowledgement, 0));
+        Assert.assertFalse(checksum.matches(acknowledgement, 2));
+    }
+
+    @Test
+    public void write_CRC32C() {
+        // CRC32C check value: E3069283, complemented, least significant byte first
+        Assert.assertArrayEquals(BytesUtils.hexToBytes("7C 6D F9 1C"), new MessageChecksum(ChecksumAlgorithm.CRC32C).update(DATA).get());
+    }
+
+    @Test
+    public void update_Slices() {
+        MessageChecksum checksum = new MessageChecksum(ChecksumAlgorithm.CRC32C);
+        byte[] expected = checksum.update(DATA).get();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(DATA.length).put(DATA, 4, 5).flip();
+        checksum.reset().update(DATA, 0, 4).update(direct);
+        Assert.assertArrayEquals(expected, checksum.get());
+        Assert.assertFalse(direct.hasRemaining());
+    }
+
+    @Test
+    public void get_Algorithm() {
+        Assert.assertEquals(ChecksumAlgorithm.CRC32C, ChecksumAlgorithm.get(ChecksumAlgorithm.CRC32C.getCode()));
+        Assert.assertNull(ChecksumAlgorithm.get((byte) 0x7F));
+        Assert.assertNull(ChecksumAlgorithm.get((byte) 0xF1));
+    }
+}
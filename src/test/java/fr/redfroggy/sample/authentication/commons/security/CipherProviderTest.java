@@ -0,0 +1,80 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CipherProviderTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected CipherProvider provider = new CipherProvider();
+
+    @Test
+    public void get_SameThread() throws Exception {
+        SecretKeySpec key = new SecretKeySpec(KEY_AES, "AES");
+        Cipher first = provider.get(Algorithm.AES, Cipher.ENCRYPT_MODE, key, CipherProvider.zeroIV(Algorithm.AES));
+        Cipher second = provider.get(Algorithm.AES, Cipher.DECRYPT_MODE, key, CipherProvider.zeroIV(Algorithm.AES));
+        Assert.assertSame(first, second);
+    }
+
+    @Test
+    public void get_OtherThread() throws Exception {
+        final SecretKeySpec key = new SecretKeySpec(KEY_AES, "AES");
+        Cipher first = provider.get(Algorithm.AES, Cipher.ENCRYPT_MODE, key, CipherProvider.zeroIV(Algorithm.AES));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Cipher second = executor.submit(new Callable<Cipher>() {
+            @Override
+            public Cipher call() throws Exception {
+                return provider.get(Algorithm.AES, Cipher.ENCRYPT_MODE, key, CipherProvider.zeroIV(Algorithm.AES));
+            }
+        }).get();
+        executor.shutdown();
+
+        Assert.assertNotSame(first, second);
+    }
+
+    @Test
+    public void encodeDecode_ConcurrentSessions() throws Exception {
+        final CipherService template = new CipherService(Algorithm.AES, KEY_AES);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+
+        for (int i = 0; i < 16; i++) {
+            final byte[] sessionKey = template.random();
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    CipherService session = template.copy();
+                    session.setKey(sessionKey);
+                    CipherService peer = new CipherService(Algorithm.AES, sessionKey);
+                    for (int j = 0; j < 100; j++) {
+                        byte[] message = ("SECRET MESSAGE " + j).getBytes();
+                        if (!new String(message).equals(new String(peer.decode(session.encode(message))))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }));
+        }
+
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get());
+        }
+        executor.shutdown();
+    }
+}
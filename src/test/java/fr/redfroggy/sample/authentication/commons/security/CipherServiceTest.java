@@ -4,7 +4,7 @@ import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.junit.MockitoJUnitRunner;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CipherServiceTest {
@@ -91,4 +91,18 @@ public class CipherServiceTest {
 
         Assert.assertArrayEquals(expected, dKexpected);
     }
+
+    @Test
+    public void copyAES() throws Exception {
+
+        byte[] expected = "SECRET MESSAGE".getBytes();
+
+        service = new CipherService(Algorithm.AES, KEY_AES);
+        CipherService copy = service.copy();
+        copy.setKey(KEY_TDES);
+
+        Assert.assertEquals(Algorithm.AES, copy.getAlgorithm());
+        Assert.assertArrayEquals(expected, service.decode(new CipherService(Algorithm.AES, KEY_AES).encode(expected)));
+        Assert.assertArrayEquals(expected, copy.decode(new CipherService(Algorithm.AES, KEY_TDES).encode(expected)));
+    }
 }
@@ -0,0 +1,56 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KeyPairStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void load() throws Exception {
+        KeyPair keyPair = new KeyPairStore(2048, resource("public.key"), resource("private.key")).get();
+
+        CipherService cipher = new CipherService(Algorithm.RSA, null);
+        cipher.keyPair = keyPair;
+        cipher.setKey(keyPair.getPublic().getEncoded());
+        Assert.assertEquals("message", new String(cipher.decode(cipher.encode("message".getBytes()))));
+    }
+
+    @Test
+    public void get_GeneratedOnce() throws Exception {
+        Path publicKey = folder.getRoot().toPath().resolve("keys/public.key");
+        Path privateKey = folder.getRoot().toPath().resolve("keys/private.key");
+
+        KeyPair generated = new KeyPairStore(1024, publicKey, privateKey).get();
+        KeyPair loaded = new KeyPairStore(1024, publicKey, privateKey).get();
+
+        Assert.assertArrayEquals(generated.getPublic().getEncoded(), loaded.getPublic().getEncoded());
+        Assert.assertArrayEquals(generated.getPrivate().getEncoded(), loaded.getPrivate().getEncoded());
+    }
+
+    @Test
+    public void getAsync() throws Exception {
+        CipherService cipher = new CipherService(Algorithm.RSA, null);
+        cipher.setKeyPair(new KeyPairStore(1024, null, null).getAsync());
+
+        // Copies wait for the same key pair
+        KeyPair keyPair = cipher.copy().getKeyPair();
+        Assert.assertNotNull(keyPair);
+        Assert.assertSame(keyPair, cipher.getKeyPair());
+    }
+
+    protected Path resource(String fileName) throws Exception {
+        return Paths.get(getClass().getResource("/" + fileName).toURI());
+    }
+}
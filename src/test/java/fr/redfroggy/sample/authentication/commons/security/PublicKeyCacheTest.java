@@ -0,0 +1,53 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PublicKeyCacheTest {
+
+    @Test
+    public void get_SameKey() throws Exception {
+        PublicKeyCache cache = new PublicKeyCache(4);
+        byte[] encoded = generate();
+
+        PublicKey key = cache.get(encoded);
+        Assert.assertArrayEquals(encoded, key.getEncoded());
+
+        // Cache must not depend on caller array
+        byte[] copy = encoded.clone();
+        encoded[encoded.length - 1]++;
+        Assert.assertSame(key, cache.get(copy));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void get_Bounded() throws Exception {
+        PublicKeyCache cache = new PublicKeyCache(1);
+        byte[] first = generate();
+        byte[] second = generate();
+
+        PublicKey key = cache.get(first);
+        cache.get(second);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNotSame(key, cache.get(first));
+        Assert.assertEquals(key, cache.get(first));
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void get_InvalidKey() throws Exception {
+        new PublicKeyCache(4).get(new byte[]{1, 2, 3});
+    }
+
+    protected byte[] generate() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair().getPublic().getEncoded();
+    }
+}
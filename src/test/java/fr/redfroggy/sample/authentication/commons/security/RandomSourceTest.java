@@ -0,0 +1,68 @@
+package fr.redfroggy.sample.authentication.commons.security;
+
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RandomSourceTest {
+
+    @Test
+    public void next() {
+        RandomSource source = new RandomSource(0);
+
+        byte[] first = source.next(16);
+        byte[] second = source.next(16);
+        Assert.assertEquals(16, first.length);
+        Assert.assertFalse(Arrays.equals(first, second));
+        Assert.assertEquals(8, source.next(8).length);
+        Assert.assertEquals(64, source.next(64).length);
+        Assert.assertEquals(0, source.available());
+    }
+
+    @Test
+    public void next_Pregenerated() throws Exception {
+        RandomSource source = new RandomSource(4);
+        for (int i = 0; i < 100 && source.available() < 4; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(4, source.available());
+
+        byte[] first = source.next(16);
+        byte[] second = source.next(8);
+        Assert.assertEquals(16, first.length);
+        Assert.assertEquals(8, second.length);
+        Assert.assertFalse(Arrays.equals(Arrays.copyOf(first, 8), second));
+    }
+
+    @Test
+    public void next_VirtualThreads() throws Exception {
+        final RandomSource source = new RandomSource(0);
+        final Set<String> values = ConcurrentHashMap.newKeySet();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 1000; i++) {
+                executor.execute(() -> values.add(BytesUtils.bytesToHex(source.next(16))));
+            }
+        }
+        Assert.assertEquals(1000, values.size());
+    }
+
+    @Test
+    public void copy_SharesSource() {
+        RandomSource source = new RandomSource(0);
+        CipherService cipher = new CipherService(Algorithm.AES, new byte[16]);
+        cipher.setRandomSource(source);
+
+        Assert.assertSame(source, cipher.copy().randomSource);
+        Assert.assertEquals(16, cipher.copy().random().length);
+    }
+}
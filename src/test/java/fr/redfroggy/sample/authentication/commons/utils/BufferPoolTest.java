@@ -0,0 +1,63 @@
+package fr.redfroggy.sample.authentication.commons.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.ByteBuffer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BufferPoolTest {
+
+    protected BufferPool pool = new BufferPool(6, 10, 1);
+
+    @Test
+    public void acquire_SizeClass() {
+        ByteBuffer buffer = pool.acquire(100);
+        Assert.assertEquals(128, buffer.capacity());
+        Assert.assertEquals(100, buffer.limit());
+        Assert.assertEquals(64, pool.acquire(1).capacity());
+    }
+
+    @Test
+    public void release_Reused() {
+        ByteBuffer buffer = pool.acquire(100);
+        pool.release(buffer);
+        ByteBuffer reused = pool.acquire(70);
+        Assert.assertSame(buffer, reused);
+        Assert.assertEquals(0, reused.position());
+        Assert.assertEquals(70, reused.limit());
+    }
+
+    @Test
+    public void release_Bounded() {
+        ByteBuffer first = pool.acquire(100);
+        ByteBuffer second = pool.acquire(100);
+        pool.release(first);
+        pool.release(second);
+        Assert.assertSame(first, pool.acquire(100));
+        Assert.assertNotSame(second, pool.acquire(100));
+    }
+
+    @Test
+    public void acquire_Oversized() {
+        ByteBuffer buffer = pool.acquire(4096);
+        Assert.assertEquals(4096, buffer.capacity());
+        pool.release(buffer);
+        Assert.assertNotSame(buffer, pool.acquire(4096));
+    }
+
+    @Test
+    public void grow_Copied() {
+        ByteBuffer buffer = pool.acquire(64);
+        buffer.put(new byte[]{1, 2, 3});
+        ByteBuffer grown = pool.grow(buffer, 200);
+        Assert.assertEquals(256, grown.capacity());
+        Assert.assertEquals(3, grown.position());
+        Assert.assertEquals(200, grown.limit());
+        Assert.assertEquals(3, grown.get(2));
+        // Former buffer went back to the pool
+        Assert.assertSame(buffer, pool.acquire(64));
+    }
+}
@@ -3,7 +3,7 @@ package fr.redfroggy.sample.authentication.commons.utils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.junit.MockitoJUnitRunner;
 
 @RunWith(MockitoJUnitRunner.class)
 public class BytesUtilsTest {
@@ -32,6 +32,21 @@ public class BytesUtilsTest {
         Assert.assertEquals("10-11\n12-13", res);
     }
 
+    @Test
+    public void appendHex_Range() {
+        StringBuilder hexa = new StringBuilder("hex:");
+        BytesUtils.appendHex(hexa, new byte[] { (byte) 0x00, (byte) 0xAB, (byte) 0x0F, (byte) 0xF0 }, 1, 3, ':', 0);
+        Assert.assertEquals("hex:AB:0F:F0", hexa.toString());
+    }
+
+    @Test
+    public void writeHex_Range() {
+        char[] hexa = new char[10];
+        int count = BytesUtils.writeHex(new byte[] { (byte) 0x7F, (byte) 0x80, (byte) 0xFF }, 0, 3, ' ', hexa, 1);
+        Assert.assertEquals(8, count);
+        Assert.assertEquals("7F 80 FF", new String(hexa, 1, count));
+    }
+
     @Test
     public void bytesToHex_CRC32() {
         byte[] expected = new byte[] { (byte) 0x36, (byte) 0x8f,  (byte) 0x0c, (byte) 0x6f };
@@ -0,0 +1,26 @@
+package fr.redfroggy.sample.authentication.commons.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.ByteBuffer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LazyBytesTest {
+
+    @Test
+    public void hex() {
+        Assert.assertEquals("41 42 0A", LazyBytes.hex(new byte[] { (byte) 0x41, (byte) 0x42, (byte) 0x0A }).toString());
+        Assert.assertEquals("", LazyBytes.hex(new byte[0]).toString());
+    }
+
+    @Test
+    public void hexAndText_Buffer() {
+        ByteBuffer buffer = ByteBuffer.wrap("xxSECRETyy".getBytes(), 2, 6);
+        Assert.assertEquals("53 45 43 52 45 54", LazyBytes.hex(buffer).toString());
+        Assert.assertEquals("SECRET", LazyBytes.text(buffer).toString());
+        Assert.assertEquals(2, buffer.position());
+    }
+}
@@ -0,0 +1,194 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.util.concurrent.MoreExecutors;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.DataInputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SelectorLoopTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected ServerService service = new ServerService();
+
+    protected ServerSocketChannel channel;
+
+    protected Thread server;
+
+    @Before
+    public void init() throws Exception {
+        channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress("localhost", 0));
+
+        SocketSettings settings = new SocketSettings();
+        settings.setSelectors(2);
+
+        ReflectionTestUtils.setField(service, "socket", channel.socket());
+        ReflectionTestUtils.setField(service, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+        ReflectionTestUtils.setField(service, "sessionExecutor", MoreExecutors.newDirectExecutorService());
+        ReflectionTestUtils.setField(service, "settings", settings);
+        ReflectionTestUtils.setField(service, "sessionStore", new SessionStore(16, 60000, 1));
+
+        server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                service.run();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stop() throws Exception {
+        service.stop();
+        server.join(5000);
+        Assert.assertFalse(server.isAlive());
+    }
+
+    @Test
+    public void run_ConcurrentSessions() throws Exception {
+
+        Socket first = new Socket("localhost", channel.socket().getLocalPort());
+        Socket second = new Socket("localhost", channel.socket().getLocalPort());
+
+        byte[] firstChallenge = challenge(first);
+        byte[] secondChallenge = challenge(second);
+
+        Assert.assertEquals(16, firstChallenge.length);
+        Assert.assertEquals(16, secondChallenge.length);
+
+        first.getOutputStream().write(CommandSet.frame(BytesUtils.hexToBytes("FF")));
+        Assert.assertEquals(-1, first.getInputStream().read());
+
+        Assert.assertEquals(16, challenge(second).length);
+        second.close();
+        first.close();
+    }
+
+    @Test
+    public void run_HandshakeTimedOut() throws Exception {
+        service.admissionSettings.setHandshakeTimeout(200);
+
+        Socket client = new Socket("localhost", channel.socket().getLocalPort());
+        Assert.assertEquals(16, challenge(client).length);
+        // Client stalled after challenge is disconnected by the loop
+        client.setSoTimeout(5000);
+        Assert.assertEquals(-1, client.getInputStream().read());
+        client.close();
+    }
+
+    @Test
+    public void run_SplitAndPipelinedFrames() throws Exception {
+
+        Socket client = new Socket("localhost", channel.socket().getLocalPort());
+        client.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+
+        byte[] frame = CommandSet.frame(BytesUtils.hexToBytes("13"));
+        client.getOutputStream().write(frame, 0, 2);
+        client.getOutputStream().flush();
+        Thread.sleep(50);
+        client.getOutputStream().write(Bytes.concat(Arrays.copyOfRange(frame, 2, frame.length), frame));
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(16, in.readInt());
+            in.readFully(new byte[16]);
+        }
+        client.close();
+    }
+
+    @Test
+    public void run_DeferredResponse() throws Exception {
+        final CompletableFuture<Void> processed = new CompletableFuture<>();
+        service.getCommands().registerAsync((byte) 0x40, (session, data) -> processed.thenApply(
+                done -> Bytes.concat(new byte[]{CommandSet.Instruction.SUC.getCode()}, data)));
+
+        Socket client = new Socket("localhost", channel.socket().getLocalPort());
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        client.getOutputStream().write(Bytes.concat(CommandSet.frame(BytesUtils.hexToBytes("40AABB")),
+                CommandSet.frame(BytesUtils.hexToBytes("13"))));
+
+        // Sessions of both loops are served while custom command is processed
+        Socket second = new Socket("localhost", channel.socket().getLocalPort());
+        Socket third = new Socket("localhost", channel.socket().getLocalPort());
+        Assert.assertEquals(16, challenge(second).length);
+        Assert.assertEquals(16, challenge(third).length);
+        Assert.assertEquals(0, in.available());
+        processed.complete(null);
+
+        // Commands are answered in order: challenge is sent after custom command response
+        Assert.assertEquals(3, in.readInt());
+        byte[] response = new byte[3];
+        in.readFully(response);
+        Assert.assertArrayEquals(BytesUtils.hexToBytes("E0AABB"), response);
+
+        Assert.assertEquals(16, in.readInt());
+        in.readFully(new byte[16]);
+        third.close();
+        second.close();
+        client.close();
+    }
+
+    @Test(timeout = 10000)
+    public void run_DeferredResponsesLimit() throws Exception {
+        service.settings.setMaxDeferredResponses(2);
+        final AtomicInteger executed = new AtomicInteger();
+        final CompletableFuture<Void> processed = new CompletableFuture<>();
+        service.getCommands().registerAsync((byte) 0x40, (session, data) -> {
+            executed.incrementAndGet();
+            return processed.thenApply(done -> Bytes.concat(new byte[]{CommandSet.Instruction.SUC.getCode()}, data));
+        });
+
+        Socket client = new Socket("localhost", channel.socket().getLocalPort());
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        for (int i = 0; i < 3; i++) {
+            client.getOutputStream().write(CommandSet.frame(new byte[]{0x40, (byte) i}));
+            if (i < 2) {
+                while (executed.get() <= i) {
+                    Thread.sleep(10);
+                }
+            }
+        }
+
+        // Third command is not read while two responses are pending
+        Thread.sleep(200);
+        Assert.assertEquals(2, executed.get());
+        processed.complete(null);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(2, in.readInt());
+            Assert.assertEquals(CommandSet.Instruction.SUC.getCode(), in.readByte());
+            Assert.assertEquals(i, in.readByte());
+        }
+        Assert.assertEquals(3, executed.get());
+        client.close();
+    }
+
+    protected byte[] challenge(Socket client) throws Exception {
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        client.getOutputStream().write(CommandSet.frame(BytesUtils.hexToBytes("13")));
+
+        byte[] challenge = new byte[in.readInt()];
+        in.readFully(challenge);
+        return challenge;
+    }
+}
@@ -1,8 +1,11 @@
 package fr.redfroggy.sample.authentication.server.services;
 
+import com.google.common.util.concurrent.MoreExecutors;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
 import fr.redfroggy.sample.authentication.commons.security.Algorithm;
 import fr.redfroggy.sample.authentication.commons.security.CipherService;
 import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,12 +13,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.runners.MockitoJUnitRunner;
-import org.mockito.stubbing.Answer;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.Inet4Address;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -34,11 +37,9 @@ public class ServerServiceAESTest {
     @Mock
     protected ServerSocket serverSocket;
 
-    @Mock
-    protected OutputStream outputStream;
+    protected ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-    @Mock
-    protected InputStream inputStream;
+    protected SessionStore sessionStore = new SessionStore(16, 60000, 1);
 
     @InjectMocks
     protected ServerService service = new ServerService();
@@ -46,18 +47,18 @@ public class ServerServiceAESTest {
     @Before
     public void init() throws Exception {
         Mockito.when(socket.getOutputStream()).thenReturn(outputStream);
-        Mockito.when(socket.getInputStream()).thenReturn(inputStream);
+        Mockito.doReturn(cipher).when(cipher).copy();
+
+        ReflectionTestUtils.setField(service, "sessionExecutor", MoreExecutors.newDirectExecutorService());
+        ReflectionTestUtils.setField(service, "sessionStore", sessionStore);
     }
 
-    protected Answer<Integer> inputStreamAnswer(final byte[] data) {
-        return new Answer<Integer>() {
-            @Override
-            public Integer answer(InvocationOnMock invocation) throws Throwable {
-                Object[] args = invocation.getArguments();
-                System.arraycopy(data, 0, args[0], 0, data.length);
-                return data.length;
-            }
-        };
+    protected InputStream frames(byte[]... commands) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] command : commands) {
+            stream.write(CommandSet.frame(command));
+        }
+        return new ByteArrayInputStream(stream.toByteArray());
     }
 
     @Test
@@ -66,22 +67,23 @@ public class ServerServiceAESTest {
         /**
          * Client command
          */
-        Mockito.when(inputStream.read(new byte[64]))
+        Mockito.when(socket.getInputStream()).thenReturn(frames(
                 // Get server challenge #1
-                .thenAnswer(inputStreamAnswer(BytesUtils.hexToBytes("13")))
+                BytesUtils.hexToBytes("13"),
                 // Check client challenge
-                .thenAnswer(inputStreamAnswer(BytesUtils.hexToBytes("1214DF8CC9F9A0C5E32621F9322CAE72803E9F1B38B9E2CDC3810AD1B49C0291C5")))
+                BytesUtils.hexToBytes("1214DF8CC9F9A0C5E32621F9322CAE72803E9F1B38B9E2CDC3810AD1B49C0291C5"),
                 // Get server challenge #2
-                .thenAnswer(inputStreamAnswer(BytesUtils.hexToBytes("11778899AABBCCD00112233445566DEEFF")))
+                BytesUtils.hexToBytes("11778899AABBCCD00112233445566DEEFF"),
                 // Message
-                .thenAnswer(inputStreamAnswer(BytesUtils.hexToBytes("204EDA4321842C82F643DB9CC26606207170A979D5E340EE5AD0B44F88B21AC257")))
+                BytesUtils.hexToBytes("204EDA4321842C82F643DB9CC26606207170A979D5E340EE5AD0B44F88B21AC257"),
                 // Stop
-                .thenAnswer(inputStreamAnswer(BytesUtils.hexToBytes("FF")));
+                BytesUtils.hexToBytes("FF")));
 
         /**
          * Server socket
          */
         Mockito.when(serverSocket.accept()).thenReturn(socket);
+        Mockito.when(serverSocket.isClosed()).thenReturn(false).thenReturn(true);
         Mockito.when(socket.isConnected()).thenReturn(true).thenReturn(false);
         Mockito.when(socket.getInetAddress()).thenReturn(Inet4Address.getLocalHost());
 
@@ -96,11 +98,122 @@ public class ServerServiceAESTest {
 
         service.run();
 
-        Mockito.verify(outputStream).write(BytesUtils.hexToBytes("AA BB CC DD EE FF 00 11 22 33 44 55 66 77 88 99"), 0, 16);
-        Mockito.verify(outputStream).write(BytesUtils.hexToBytes("E0"), 0, 1);
-        Mockito.verify(outputStream).write(BytesUtils.hexToBytes("90 4F 58 BA 79 92 40 77 2D 99 0F AB 2F 24 5E 29 23 F8 E1 5D 74 96 CA 52 17 52 7E CB AE 3C 33 81"), 0, 32);
-        Mockito.verify(outputStream).write(BytesUtils.hexToBytes("30 A9 88 17 BF"), 0, 5);
+        Assert.assertArrayEquals(BytesUtils.hexToBytes(
+                "00 00 00 10 AA BB CC DD EE FF 00 11 22 33 44 55 66 77 88 99"
+                        + "00 00 00 01 E0"
+                        + "00 00 00 20 90 4F 58 BA 79 92 40 77 2D 99 0F AB 2F 24 5E 29 23 F8 E1 5D 74 96 CA 52 17 52 7E CB AE 3C 33 81"
+                        + "00 00 00 05 30 A9 88 17 BF"), outputStream.toByteArray());
 
         Mockito.verify(serverSocket, Mockito.times(1)).close();
     }
+
+    @Test
+    public void run_PipelinedMessages() throws Exception {
+
+        /**
+         * Client command
+         */
+        Mockito.when(socket.getInputStream()).thenReturn(frames(
+                // Get server challenge #1
+                BytesUtils.hexToBytes("13"),
+                // Check client challenge
+                BytesUtils.hexToBytes("1214DF8CC9F9A0C5E32621F9322CAE72803E9F1B38B9E2CDC3810AD1B49C0291C5"),
+                // Get server challenge #2
+                BytesUtils.hexToBytes("11778899AABBCCD00112233445566DEEFF"),
+                // Message #7
+                BytesUtils.hexToBytes("21000000074EDA4321842C82F643DB9CC26606207170A979D5E340EE5AD0B44F88B21AC257"),
+                // Message #8
+                BytesUtils.hexToBytes("21000000084EDA4321842C82F643DB9CC26606207170A979D5E340EE5AD0B44F88B21AC257"),
+                // Message #9, not decodable
+                BytesUtils.hexToBytes("2100000009AABBCC"),
+                // Message without sequence number
+                BytesUtils.hexToBytes("210000"),
+                // Stop
+                BytesUtils.hexToBytes("FF")));
+
+        /**
+         * Server socket
+         */
+        Mockito.when(serverSocket.accept()).thenReturn(socket);
+        Mockito.when(serverSocket.isClosed()).thenReturn(false).thenReturn(true);
+        Mockito.when(socket.isConnected()).thenReturn(true).thenReturn(false);
+        Mockito.when(socket.getInetAddress()).thenReturn(Inet4Address.getLocalHost());
+
+        /**
+         * Cipher Randomize
+         */
+        Mockito.when(cipher.random())
+                // Get client challenge #1
+                .thenReturn(BytesUtils.hexToBytes("AABBCCDDEEFF00112233445566778899"))
+                        // Get client challenge #2
+                .thenReturn(BytesUtils.hexToBytes("885684629592D2E4C5D88462CD84EFAB"));
+
+        service.run();
+
+        Assert.assertArrayEquals(BytesUtils.hexToBytes(
+                "00 00 00 10 AA BB CC DD EE FF 00 11 22 33 44 55 66 77 88 99"
+                        + "00 00 00 01 E0"
+                        + "00 00 00 20 90 4F 58 BA 79 92 40 77 2D 99 0F AB 2F 24 5E 29 23 F8 E1 5D 74 96 CA 52 17 52 7E CB AE 3C 33 81"
+                        + "00 00 00 09 31 00 00 00 07 A9 88 17 BF"
+                        + "00 00 00 09 31 00 00 00 08 A9 88 17 BF"
+                        + "00 00 00 18 F1 00 00 00 09" + BytesUtils.bytesToHex("Cryptographic error".getBytes())
+                        + "00 00 00 18 F0" + BytesUtils.bytesToHex("Missing sequence number".getBytes())),
+                outputStream.toByteArray());
+    }
+
+    @Test
+    public void run_CustomCommand() throws Exception {
+
+        service.getCommands().register((byte) 0x40, (session, data) -> {
+            byte[] echo = new byte[1 + data.remaining()];
+            echo[0] = CommandSet.Instruction.SUC.getCode();
+            data.get(echo, 1, data.remaining());
+            return echo;
+        });
+
+        Mockito.when(socket.getInputStream()).thenReturn(frames(
+                // Custom command
+                BytesUtils.hexToBytes("40AABB"),
+                // Unregistered command
+                BytesUtils.hexToBytes("41"),
+                // Stop
+                BytesUtils.hexToBytes("FF")));
+
+        Mockito.when(serverSocket.accept()).thenReturn(socket);
+        Mockito.when(serverSocket.isClosed()).thenReturn(false).thenReturn(true);
+        Mockito.when(socket.isConnected()).thenReturn(true).thenReturn(false);
+        Mockito.when(socket.getInetAddress()).thenReturn(Inet4Address.getLocalHost());
+
+        service.run();
+
+        Assert.assertArrayEquals(BytesUtils.hexToBytes(
+                "00 00 00 03 E0 AA BB"
+                        + "00 00 00 14 F0" + BytesUtils.bytesToHex("Unknown instruction".getBytes())),
+                outputStream.toByteArray());
+    }
+
+    @Test
+    public void run_OversizedHandshakeCommand() throws Exception {
+
+        Mockito.when(socket.getInputStream()).thenReturn(frames(
+                // Get server challenge
+                BytesUtils.hexToBytes("13"),
+                // Command beyond handshake limit, before authentication
+                new byte[9 * 1024],
+                // Stop
+                BytesUtils.hexToBytes("FF")));
+
+        Mockito.when(serverSocket.accept()).thenReturn(socket);
+        Mockito.when(serverSocket.isClosed()).thenReturn(false).thenReturn(true);
+        Mockito.when(socket.isConnected()).thenReturn(true).thenReturn(false);
+        Mockito.when(socket.getInetAddress()).thenReturn(Inet4Address.getLocalHost());
+        Mockito.when(cipher.random()).thenReturn(BytesUtils.hexToBytes("AABBCCDDEEFF00112233445566778899"));
+
+        service.run();
+
+        // Session is closed at frame header, without answering
+        Assert.assertArrayEquals(BytesUtils.hexToBytes("00 00 00 10 AA BB CC DD EE FF 00 11 22 33 44 55 66 77 88 99"),
+                outputStream.toByteArray());
+        Mockito.verify(socket).close();
+    }
 }
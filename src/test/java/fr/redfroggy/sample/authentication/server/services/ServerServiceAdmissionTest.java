@@ -0,0 +1,162 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.configuration.AdmissionSettings;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import fr.redfroggy.sample.authentication.server.configuration.Transport;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ServerServiceAdmissionTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected ServerService service = new ServerService();
+
+    protected ServerSocket serverSocket;
+
+    protected SocketSettings settings = new SocketSettings();
+
+    protected AdmissionSettings admissionSettings = new AdmissionSettings();
+
+    protected Thread server;
+
+    @Before
+    public void init() throws Exception {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        ReflectionTestUtils.setField(service, "socket", serverSocket);
+        ReflectionTestUtils.setField(service, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+        ReflectionTestUtils.setField(service, "settings", settings);
+        ReflectionTestUtils.setField(service, "admissionSettings", admissionSettings);
+        ReflectionTestUtils.setField(service, "sessionStore", new SessionStore(16, 60000, 1));
+    }
+
+    @After
+    public void stop() throws Exception {
+        service.stop();
+        server.join(5000);
+        Assert.assertFalse(server.isAlive());
+    }
+
+    protected void start(ExecutorService sessionExecutor) {
+        ReflectionTestUtils.setField(service, "sessionExecutor", sessionExecutor);
+        server = new Thread(service::run);
+        server.start();
+    }
+
+    @Test
+    public void accept_SessionThreadsFull() throws Exception {
+        start(new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>()));
+
+        Socket first = connect();
+        Assert.assertEquals(16, challenge(first).length);
+
+        Socket second = connect();
+        Assert.assertArrayEquals(CommandSet.busy(), read(second));
+        Assert.assertEquals(-1, second.getInputStream().read());
+
+        first.close();
+    }
+
+    @Test
+    public void accept_VirtualSessionsFull() throws Exception {
+        settings.setTransport(Transport.VIRTUAL);
+        admissionSettings.setMaxSessions(1);
+        start(Executors.newVirtualThreadPerTaskExecutor());
+
+        Socket first = connect();
+        Assert.assertEquals(16, challenge(first).length);
+
+        Socket second = connect();
+        Assert.assertArrayEquals(CommandSet.busy(), read(second));
+
+        // Session slot is free again once first client is gone
+        first.close();
+        Socket third = retryChallenge();
+        third.close();
+    }
+
+    @Test
+    public void execute_HandshakesFull() throws Exception {
+        admissionSettings.setMaxHandshakes(1);
+        start(Executors.newCachedThreadPool());
+
+        Socket first = connect();
+        Socket second = connect();
+        Assert.assertEquals(16, challenge(first).length);
+        Assert.assertArrayEquals(CommandSet.busy(), challenge(second));
+        // Session holding the permit may ask again
+        Assert.assertEquals(16, challenge(first).length);
+
+        // Permit is released when handshaking session is closed
+        first.close();
+        second.close();
+        Socket third = retryChallenge();
+        third.close();
+    }
+
+    @Test
+    public void execute_HandshakeTimedOut() throws Exception {
+        admissionSettings.setMaxHandshakes(1);
+        admissionSettings.setHandshakeTimeout(200);
+        start(Executors.newCachedThreadPool());
+
+        // Client stalled after challenge is disconnected, and its permit given back
+        Socket first = connect();
+        Assert.assertEquals(16, challenge(first).length);
+        first.setSoTimeout(5000);
+        Assert.assertEquals(-1, first.getInputStream().read());
+
+        Socket second = retryChallenge();
+        second.close();
+        first.close();
+    }
+
+    protected Socket connect() throws Exception {
+        return new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    }
+
+    protected Socket retryChallenge() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            Socket client = connect();
+            if (challenge(client).length == 16) {
+                return client;
+            }
+            client.close();
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Server still busy");
+    }
+
+    protected byte[] challenge(Socket client) throws Exception {
+        client.getOutputStream().write(CommandSet.frame(CommandSet.getChallenge()));
+        return read(client);
+    }
+
+    protected byte[] read(Socket client) throws Exception {
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        byte[] response = new byte[in.readInt()];
+        in.readFully(response);
+        return response;
+    }
+}
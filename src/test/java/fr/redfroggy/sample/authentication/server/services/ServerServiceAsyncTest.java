@@ -0,0 +1,176 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import com.google.common.primitives.Bytes;
+import fr.redfroggy.sample.authentication.client.services.ClientService;
+import fr.redfroggy.sample.authentication.client.services.MessagePipeline;
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ServerServiceAsyncTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected static final Executor DELAYED = CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS);
+
+    protected ServerService service = new ServerService();
+
+    protected ServerSocket serverSocket;
+
+    protected Thread server;
+
+    @Before
+    public void init() throws Exception {
+        serverSocket = new ServerSocket(0, 8, InetAddress.getLoopbackAddress());
+
+        ReflectionTestUtils.setField(service, "socket", serverSocket);
+        ReflectionTestUtils.setField(service, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+        ReflectionTestUtils.setField(service, "sessionExecutor", Executors.newVirtualThreadPerTaskExecutor());
+        ReflectionTestUtils.setField(service, "settings", new SocketSettings());
+        ReflectionTestUtils.setField(service, "sessionStore", new SessionStore(16, 60000, 1));
+
+        server = new Thread(service::run);
+        server.start();
+    }
+
+    @After
+    public void stop() throws Exception {
+        service.stop();
+        server.join(5000);
+        Assert.assertFalse(server.isAlive());
+    }
+
+    @Test
+    public void sendMessage_AsyncHandler() throws Exception {
+        final List<String> processed = new CopyOnWriteArrayList<>();
+        ReflectionTestUtils.setField(service, "messageHandler", (MessageHandler) (session, message) ->
+                CompletableFuture.runAsync(() -> processed.add(new String(message)), DELAYED));
+
+        Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        ClientService client = new ClientService(socket, new CipherService(Algorithm.AES, KEY_AES));
+        client.connect();
+
+        // Acknowledged once processed
+        Assert.assertTrue(client.sendMessage("Secret message"));
+        Assert.assertEquals(1, processed.size());
+        Assert.assertEquals("Secret message", processed.get(0));
+        socket.close();
+    }
+
+    @Test
+    public void sendMessage_HandlerFailed() throws Exception {
+        ReflectionTestUtils.setField(service, "messageHandler", (MessageHandler) (session, message) ->
+                CompletableFuture.runAsync(() -> {
+                    throw new IllegalStateException("Database unavailable");
+                }, DELAYED));
+
+        Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        ClientService client = new ClientService(socket, new CipherService(Algorithm.AES, KEY_AES));
+        client.connect();
+
+        Assert.assertFalse(client.sendMessage("Secret message"));
+        // Session goes on
+        Assert.assertFalse(client.sendMessage("Secret message"));
+        socket.close();
+    }
+
+    @Test(timeout = 10000)
+    public void pipeline_AsyncHandler() throws Exception {
+        // First messages are processed last, message 3 fails
+        ReflectionTestUtils.setField(service, "messageHandler", (MessageHandler) (session, message) -> {
+            final int index = Integer.parseInt(new String(message));
+            return CompletableFuture.runAsync(() -> {
+                if (index == 3) {
+                    throw new IllegalStateException("Database unavailable");
+                }
+            }, CompletableFuture.delayedExecutor((8 - index) * 20L, TimeUnit.MILLISECONDS));
+        });
+
+        final List<Integer> acknowledged = new CopyOnWriteArrayList<>();
+        Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        ClientService client = new ClientService(socket, new CipherService(Algorithm.AES, KEY_AES)) {
+            @Override
+            protected byte[] receiveAcknowledgement() throws CommunicationException {
+                byte[] acknowledgement = super.receiveAcknowledgement();
+                acknowledged.add(ByteBuffer.wrap(acknowledgement, 1, CommandSet.SEQUENCE_SIZE).getInt());
+                return acknowledgement;
+            }
+        };
+        client.connect();
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        try (MessagePipeline pipeline = client.pipeline(8)) {
+            for (int i = 0; i < 8; i++) {
+                results.add(pipeline.submit(Integer.toString(i)));
+            }
+        }
+
+        // Replies follow command order, failure is tagged with its message sequence number
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), acknowledged);
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals(Integer.toString(i), i != 3, results.get(i).get());
+        }
+        socket.close();
+    }
+
+    @Test(timeout = 10000)
+    public void execute_DeferredResponsesLimit() throws Exception {
+        service.settings.setMaxDeferredResponses(2);
+        final AtomicInteger executed = new AtomicInteger();
+        final CompletableFuture<Void> processed = new CompletableFuture<>();
+        service.getCommands().registerAsync((byte) 0x40, (session, data) -> {
+            executed.incrementAndGet();
+            return processed.thenApply(done -> Bytes.concat(new byte[]{CommandSet.Instruction.SUC.getCode()}, data));
+        });
+
+        Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        for (int i = 0; i < 3; i++) {
+            client.getOutputStream().write(CommandSet.frame(new byte[]{0x40, (byte) i}));
+            if (i < 2) {
+                while (executed.get() <= i) {
+                    Thread.sleep(10);
+                }
+            }
+        }
+
+        // Third command is not read while two responses are pending
+        Thread.sleep(200);
+        Assert.assertEquals(2, executed.get());
+        processed.complete(null);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(2, in.readInt());
+            Assert.assertEquals(CommandSet.Instruction.SUC.getCode(), in.readByte());
+            Assert.assertEquals(i, in.readByte());
+        }
+        Assert.assertEquals(3, executed.get());
+        client.close();
+    }
+}
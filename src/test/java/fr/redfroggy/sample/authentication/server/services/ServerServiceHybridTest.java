@@ -0,0 +1,108 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import com.google.common.util.concurrent.Futures;
+import fr.redfroggy.sample.authentication.client.services.ClientService;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.security.KeyPairStore;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.util.concurrent.Executors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ServerServiceHybridTest {
+
+    protected ServerService service = new ServerService();
+
+    protected CipherService serverCipher = new CipherService(Algorithm.RSA, null);
+
+    protected SessionStore sessionStore = new SessionStore(16, 60000, 1);
+
+    protected ServerSocket serverSocket;
+
+    protected Thread server;
+
+    @Before
+    public void init() throws Exception {
+        serverSocket = new ServerSocket(0, 8, InetAddress.getLoopbackAddress());
+        serverCipher.setKeyPair(Futures.immediateFuture(keyPair("server-public.key", "server-private.key")));
+
+        ReflectionTestUtils.setField(service, "socket", serverSocket);
+        ReflectionTestUtils.setField(service, "cipherService", serverCipher);
+        ReflectionTestUtils.setField(service, "sessionExecutor", Executors.newVirtualThreadPerTaskExecutor());
+        ReflectionTestUtils.setField(service, "settings", new SocketSettings());
+        ReflectionTestUtils.setField(service, "sessionStore", sessionStore);
+    }
+
+    @After
+    public void stop() throws Exception {
+        service.stop();
+        server.join(5000);
+        Assert.assertFalse(server.isAlive());
+    }
+
+    @Test
+    public void connect_Hybrid() throws Exception {
+        serverCipher.setSessionAlgorithm(Algorithm.AES);
+        start();
+
+        CipherService clientCipher = clientCipher();
+        Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        ClientService client = new ClientService(socket, clientCipher);
+        client.connect();
+
+        Assert.assertEquals(Algorithm.AES, clientCipher.getAlgorithm());
+        Assert.assertEquals(16, clientCipher.getKey().length);
+        // Longer than RSA modulus allows
+        Assert.assertTrue(client.sendMessage(new String(new char[1000]).replace('\0', 'm')));
+        Assert.assertTrue(client.sendMessage("Secret message"));
+        socket.close();
+    }
+
+    @Test
+    public void connect_ServerWithoutHybrid() throws Exception {
+        start();
+
+        CipherService clientCipher = clientCipher();
+        Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        ClientService client = new ClientService(socket, clientCipher);
+        client.connect();
+
+        Assert.assertEquals(Algorithm.RSA, clientCipher.getAlgorithm());
+        Assert.assertTrue(client.sendMessage("Secret message"));
+        socket.close();
+    }
+
+    protected void start() {
+        server = new Thread(service::run);
+        server.start();
+    }
+
+    protected CipherService clientCipher() throws Exception {
+        CipherService cipher = new CipherService(Algorithm.RSA, null);
+        cipher.setKeyPair(Futures.immediateFuture(keyPair("public.key", "private.key")));
+        cipher.setSessionAlgorithm(Algorithm.AES);
+        return cipher;
+    }
+
+    protected KeyPair keyPair(String publicKey, String privateKey) throws Exception {
+        return new KeyPairStore(2048, resource(publicKey), resource(privateKey)).get();
+    }
+
+    protected Path resource(String name) throws Exception {
+        return Paths.get(getClass().getResource("/" + name).toURI());
+    }
+}
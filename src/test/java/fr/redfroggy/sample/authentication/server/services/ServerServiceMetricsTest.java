@@ -0,0 +1,134 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.client.services.ClientService;
+import fr.redfroggy.sample.authentication.commons.metrics.HandshakePhase;
+import fr.redfroggy.sample.authentication.commons.metrics.HandshakeRecorder;
+import fr.redfroggy.sample.authentication.commons.metrics.Meters;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import fr.redfroggy.sample.authentication.server.configuration.TicketSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ServerServiceMetricsTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected ServerService service = new ServerService();
+
+    protected MeterRegistry registry = new SimpleMeterRegistry();
+
+    protected Meters meters = new Meters(registry);
+
+    protected HandshakeRecorder serverRecorder = new HandshakeRecorder(TimeUnit.SECONDS.toNanos(10));
+
+    protected ServerSocket serverSocket;
+
+    protected Thread server;
+
+    @Before
+    public void init() throws Exception {
+        serverSocket = new ServerSocket(0, 8, InetAddress.getLoopbackAddress());
+
+        ReflectionTestUtils.setField(service, "socket", serverSocket);
+        ReflectionTestUtils.setField(service, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+        ReflectionTestUtils.setField(service, "sessionExecutor", Executors.newVirtualThreadPerTaskExecutor());
+        ReflectionTestUtils.setField(service, "settings", new SocketSettings());
+        ReflectionTestUtils.setField(service, "sessionStore", new SessionStore(16, 60000, 1));
+        TicketService ticketService = new TicketService();
+        ReflectionTestUtils.setField(ticketService, "settings", new TicketSettings());
+        ReflectionTestUtils.setField(service, "ticketService", ticketService);
+        ReflectionTestUtils.setField(service, "meterRegistry", registry);
+        ReflectionTestUtils.setField(service, "meters", meters);
+        ReflectionTestUtils.setField(service, "handshakeRecorder", serverRecorder);
+
+        server = new Thread(service::run);
+        server.start();
+    }
+
+    @After
+    public void stop() throws Exception {
+        service.stop();
+        server.join(5000);
+        Assert.assertFalse(server.isAlive());
+    }
+
+    @Test
+    public void execute_Recorded() throws Exception {
+        Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        ClientService client = new ClientService(socket, new CipherService(Algorithm.AES, KEY_AES));
+        ReflectionTestUtils.setField(client, "meters", meters);
+
+        client.connect();
+        Assert.assertTrue(client.sendMessage("Secret message"));
+        client.requestTicket();
+
+        for (String instruction : new String[]{"CLG", "AUC", "AUS", "MSG"}) {
+            Assert.assertEquals(instruction, 1, registry.get("server.commands").tag("instruction", instruction).timer().count());
+        }
+        Assert.assertEquals(0, registry.get("server.commands.errors").tag("instruction", "MSG").counter().count(), 0);
+        // Client and server handshakes
+        Assert.assertEquals(2, registry.get("handshakes").tag("algorithm", "AES").timer().count());
+        Assert.assertTrue(registry.get("communication.bytes").tag("direction", "sent").counter().count() > 0);
+        Assert.assertEquals(1, registry.get("server.connections").gauge().value(), 0);
+        Assert.assertEquals(1, registry.get("server.sessions").gauge().value(), 0);
+        Assert.assertEquals(0, registry.get("server.handshakes").gauge().value(), 0);
+        socket.close();
+    }
+
+    @Test
+    public void command_CustomInstruction() throws Exception {
+        meters.command((byte) 0x40, 1000, true);
+        meters.command((byte) 0x41, 1000, false);
+
+        // Custom instructions are told apart by their code
+        Assert.assertEquals(1, registry.get("server.commands").tags("instruction", "UKW", "code", "40").timer().count());
+        Assert.assertEquals(1, registry.get("server.commands.errors").tags("instruction", "UKW", "code", "40").counter().count(), 0);
+        Assert.assertEquals(1, registry.get("server.commands").tags("instruction", "UKW", "code", "41").timer().count());
+        Assert.assertEquals(1, registry.get("server.commands").tags("instruction", "MSG", "code", "20").timers().size());
+    }
+
+    @Test
+    public void authenticate_PhasesRecorded() throws Exception {
+        Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        ClientService client = new ClientService(socket, new CipherService(Algorithm.AES, KEY_AES));
+        HandshakeRecorder clientRecorder = new HandshakeRecorder(TimeUnit.SECONDS.toNanos(10));
+        ReflectionTestUtils.setField(client, "handshakeRecorder", clientRecorder);
+
+        client.connect();
+        serverRecorder.snapshot();
+        clientRecorder.snapshot();
+
+        for (HandshakePhase phase : HandshakePhase.values()) {
+            Assert.assertEquals(phase.name(), 1, serverRecorder.getInterval(phase).getTotalCount());
+            Assert.assertEquals(phase.name(), 1, clientRecorder.getInterval(phase).getTotalCount());
+            // Client phases include round trips to the server
+            Assert.assertTrue(clientRecorder.getInterval(phase).getMaxValue() >= serverRecorder.getInterval(phase).getMinValue());
+        }
+
+        // Intervals are reset by each snapshot, longer phases are recorded with highest tracked value
+        clientRecorder.record(HandshakePhase.CHALLENGE, TimeUnit.MINUTES.toNanos(1));
+        clientRecorder.snapshot();
+        Assert.assertEquals(1, clientRecorder.getInterval(HandshakePhase.CHALLENGE).getTotalCount());
+        Assert.assertTrue(clientRecorder.getInterval(HandshakePhase.CHALLENGE).valuesAreEquivalent(
+                clientRecorder.getInterval(HandshakePhase.CHALLENGE).getMaxValue(), TimeUnit.SECONDS.toNanos(10)));
+        Assert.assertEquals(0, clientRecorder.getInterval(HandshakePhase.CLIENT_AUTHENTICATION).getTotalCount());
+        socket.close();
+    }
+}
@@ -1,8 +1,11 @@
 package fr.redfroggy.sample.authentication.server.services;
 
+import com.google.common.util.concurrent.MoreExecutors;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
 import fr.redfroggy.sample.authentication.commons.security.Algorithm;
 import fr.redfroggy.sample.authentication.commons.security.CipherService;
 import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,15 +13,14 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.runners.MockitoJUnitRunner;
-import org.mockito.stubbing.Answer;
+import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.Inet4Address;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -28,7 +30,6 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.Arrays;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ServerServiceRSATest {
@@ -42,11 +43,9 @@ public class ServerServiceRSATest {
     @Mock
     protected ServerSocket serverSocket;
 
-    @Mock
-    protected OutputStream outputStream;
+    protected ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-    @Mock
-    protected InputStream inputStream;
+    protected SessionStore sessionStore = new SessionStore(16, 60000, 1);
 
     @InjectMocks
     protected ServerService service = new ServerService();
@@ -54,8 +53,10 @@ public class ServerServiceRSATest {
     @Before
     public void init() throws Exception {
         Mockito.when(socket.getOutputStream()).thenReturn(outputStream);
-        Mockito.when(socket.getInputStream()).thenReturn(inputStream);
+        Mockito.doReturn(cipher).when(cipher).copy();
 
+        ReflectionTestUtils.setField(service, "sessionExecutor", MoreExecutors.newDirectExecutorService());
+        ReflectionTestUtils.setField(service, "sessionStore", sessionStore);
         ReflectionTestUtils.setField(cipher, "keyPair", getKeyPair());
     }
 
@@ -87,15 +88,12 @@ public class ServerServiceRSATest {
         return keyFactory.generatePrivate(privateKeySpec);
     }
 
-    protected Answer<Integer> inputStreamAnswer(final byte[] data) {
-        return new Answer<Integer>() {
-            @Override
-            public Integer answer(InvocationOnMock invocation) throws Throwable {
-                Object[] args = invocation.getArguments();
-                System.arraycopy(data, 0, args[0], 0, data.length);
-                return data.length;
-            }
-        };
+    protected InputStream frames(byte[]... commands) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] command : commands) {
+            stream.write(CommandSet.frame(command));
+        }
+        return new ByteArrayInputStream(stream.toByteArray());
     }
 
     @Test
@@ -107,33 +105,27 @@ public class ServerServiceRSATest {
         /**
          * Server responses
          */
-        Mockito.when(inputStream.read(new byte[64]))
+        Mockito.when(socket.getInputStream()).thenReturn(frames(
                 // Get client public key
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(clientKey, 0, 64)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(clientKey, 64, 128)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(clientKey, 128, 192)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(clientKey, 192, 256)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(clientKey, 256, 294)))
+                clientKey,
                 // Message
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(message, 0, 64)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(message, 64, 128)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(message, 128, 192)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(message, 192, 256)))
-                .thenAnswer(inputStreamAnswer(Arrays.copyOfRange(message, 256, 257)))
+                message,
                 // Stop
-                .thenAnswer(inputStreamAnswer(BytesUtils.hexToBytes("FF")));
+                BytesUtils.hexToBytes("FF")));
 
         /**
          * Server socket
          */
         Mockito.when(serverSocket.accept()).thenReturn(socket);
+        Mockito.when(serverSocket.isClosed()).thenReturn(false).thenReturn(true);
         Mockito.when(socket.isConnected()).thenReturn(true).thenReturn(false);
         Mockito.when(socket.getInetAddress()).thenReturn(Inet4Address.getLocalHost());
 
         service.run();
 
-        Mockito.verify(outputStream).write(BytesUtils.hexToBytes("F0 55 6E 6B 6E 6F 77 6E 20 69 6E 73 74 72 75 63 74 69 6F 6E"), 0, 20);
-        Mockito.verify(outputStream).write(BytesUtils.hexToBytes("30 A9 88 17 BF"), 0, 5);
+        Assert.assertArrayEquals(BytesUtils.hexToBytes(
+                "00 00 00 14 F0 55 6E 6B 6E 6F 77 6E 20 69 6E 73 74 72 75 63 74 69 6F 6E"
+                        + "00 00 00 05 30 A9 88 17 BF"), outputStream.toByteArray());
 
         Mockito.verify(serverSocket, Mockito.times(1)).close();
     }
@@ -0,0 +1,263 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.client.services.ClientService;
+import fr.redfroggy.sample.authentication.commons.exceptions.CommunicationException;
+import fr.redfroggy.sample.authentication.commons.protocol.ChecksumAlgorithm;
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.protocol.MessageChecksum;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ServerServiceStreamTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected ServerService service = new ServerService();
+
+    protected ServerSocket serverSocket;
+
+    protected Thread server;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void stop() throws Exception {
+        service.stop();
+        server.join(5000);
+        Assert.assertFalse(server.isAlive());
+    }
+
+    @Test
+    public void sendMessage_Stream() throws Exception {
+        start(false);
+        ClientService client = connect(Algorithm.AES);
+
+        // Several chunks, last bloc incomplete and ending with zero bytes
+        Assert.assertTrue(client.sendMessage(new GeneratedStream(3 * CommandSet.STREAM_CHUNK_SIZE + 7)));
+        Assert.assertTrue(client.sendMessage(new ByteArrayInputStream(new byte[0])));
+        Assert.assertTrue(client.sendMessage(Channels.newChannel(new ByteArrayInputStream("Streamed message".getBytes()))));
+        // Following messages are still acknowledged in order
+        Assert.assertTrue(client.sendMessage("Secret message"));
+    }
+
+    @Test
+    public void sendMessage_Stream_NIO() throws Exception {
+        start(true);
+        ClientService client = connect(Algorithm.AES);
+
+        Assert.assertTrue(client.sendMessage(new GeneratedStream(2 * CommandSet.STREAM_CHUNK_SIZE + 1)));
+        Assert.assertTrue(client.sendMessage("Secret message"));
+    }
+
+    @Test
+    public void sendMessage_CRC32C() throws Exception {
+        start(true);
+        ClientService client = connect(Algorithm.AES);
+
+        Assert.assertTrue(client.negotiateChecksum(ChecksumAlgorithm.CRC32C));
+        Assert.assertEquals(ChecksumAlgorithm.CRC32C, client.getChecksum().getAlgorithm());
+        Assert.assertTrue(client.sendMessage("Secret message"));
+        Assert.assertTrue(client.sendMessages(Arrays.asList("First message", "Second message")));
+        Assert.assertTrue(client.sendMessage(new GeneratedStream(CommandSet.STREAM_CHUNK_SIZE + 3)));
+    }
+
+    @Test
+    public void execute_UnsupportedChecksum() throws Exception {
+        start(false);
+        Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        DataInputStream in = new DataInputStream(client.getInputStream());
+
+        client.getOutputStream().write(CommandSet.frame(BytesUtils.hexToBytes("18 7F")));
+
+        byte[] response = new byte[in.readInt()];
+        in.readFully(response);
+        Assert.assertArrayEquals(CommandSet.error("Unsupported checksum algorithm"), response);
+        client.close();
+    }
+
+    @Test(expected = CommunicationException.class)
+    public void sendMessage_Stream_RSA() throws Exception {
+        start(false);
+        new ClientService(new Socket(), new CipherService(Algorithm.RSA, null)).sendMessage(new ByteArrayInputStream(new byte[16]));
+    }
+
+    @Test
+    public void execute_ChunkWithoutStream() throws Exception {
+        start(false);
+        Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        DataInputStream in = new DataInputStream(client.getInputStream());
+
+        // Chunk has no response, error is answered at end of stream
+        client.getOutputStream().write(CommandSet.frame(BytesUtils.hexToBytes("24 00112233445566778899AABBCCDDEEFF")));
+        client.getOutputStream().write(CommandSet.frame(BytesUtils.hexToBytes("25 00")));
+
+        byte[] response = new byte[in.readInt()];
+        in.readFully(response);
+        Assert.assertArrayEquals(CommandSet.error("No message stream"), response);
+        client.close();
+    }
+
+    @Test
+    public void sendFile() throws Exception {
+        Path received = folder.newFolder("received").toPath();
+        service.fileSettings.setDirectory(received.toString());
+        start(true);
+        ClientService client = connect(Algorithm.AES);
+
+        Path file = folder.newFile("data.bin").toPath();
+        byte[] content = new byte[3 * CommandSet.STREAM_CHUNK_SIZE + 5];
+        new Random(1).nextBytes(content);
+        Files.write(file, content);
+
+        Assert.assertTrue(client.sendFile(file));
+        Assert.assertArrayEquals(content, Files.readAllBytes(received.resolve("data.bin")));
+
+        // Empty file
+        Assert.assertTrue(client.sendFile(folder.newFile("empty.bin").toPath()));
+        Assert.assertEquals(0, Files.size(received.resolve("empty.bin")));
+        Assert.assertTrue(client.sendMessage("Secret message"));
+    }
+
+    @Test
+    public void sendFile_Existing() throws Exception {
+        Path received = folder.newFolder("received").toPath();
+        Path existing = Files.write(received.resolve("data.bin"), new byte[]{1, 2, 3});
+        service.fileSettings.setDirectory(received.toString());
+        start(false);
+
+        // Failed transfer leaves existing file untouched
+        FileStream stream = new FileStream(new CipherService(Algorithm.AES, KEY_AES).streamCipher(Cipher.DECRYPT_MODE),
+                new MessageChecksum(ChecksumAlgorithm.CRC32), existing, 16);
+        stream.fail("Session closed");
+        stream.close();
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(existing));
+        try (Stream<Path> files = Files.list(received)) {
+            Assert.assertEquals(1, files.count());
+        }
+
+        // Complete transfer replaces it
+        Path file = folder.newFile("data.bin").toPath();
+        Files.write(file, new byte[]{4, 5, 6, 7});
+        ClientService client = connect(Algorithm.AES);
+        Assert.assertTrue(client.sendFile(file));
+        Assert.assertArrayEquals(new byte[]{4, 5, 6, 7}, Files.readAllBytes(existing));
+    }
+
+    @Test
+    public void sendFile_Disabled() throws Exception {
+        start(false);
+        ClientService client = connect(Algorithm.AES);
+
+        Assert.assertFalse(client.sendFile(folder.newFile("data.bin").toPath()));
+        Assert.assertTrue(client.sendMessage("Secret message"));
+    }
+
+    @Test
+    public void execute_InvalidFileName() throws Exception {
+        service.fileSettings.setDirectory(folder.getRoot().toString());
+        start(false);
+        Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        DataInputStream in = new DataInputStream(client.getInputStream());
+
+        for (String name : new String[]{"../data.bin", "dir/data.bin", "..", ""}) {
+            byte[] command = ByteBuffer.allocate(9 + name.length()).put(CommandSet.Instruction.FIL.getCode()).putLong(16).put(name.getBytes()).array();
+            client.getOutputStream().write(CommandSet.frame(command));
+
+            byte[] response = new byte[in.readInt()];
+            in.readFully(response);
+            Assert.assertArrayEquals(name, CommandSet.error("Invalid file"), response);
+        }
+        client.close();
+    }
+
+    protected void start(boolean nio) throws Exception {
+        SocketSettings settings = new SocketSettings();
+        if (nio) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            serverSocket = channel.socket();
+            settings.setSelectors(1);
+        } else {
+            serverSocket = new ServerSocket(0, 8, InetAddress.getLoopbackAddress());
+        }
+
+        ReflectionTestUtils.setField(service, "socket", serverSocket);
+        ReflectionTestUtils.setField(service, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+        ReflectionTestUtils.setField(service, "sessionExecutor", Executors.newVirtualThreadPerTaskExecutor());
+        ReflectionTestUtils.setField(service, "settings", settings);
+        ReflectionTestUtils.setField(service, "sessionStore", new SessionStore(16, 60000, 1));
+
+        server = new Thread(service::run);
+        server.start();
+    }
+
+    protected ClientService connect(Algorithm algorithm) throws Exception {
+        Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        ClientService client = new ClientService(socket, new CipherService(algorithm, KEY_AES));
+        client.connect();
+        return client;
+    }
+
+    /**
+     * Message generated as it is read, never held in memory
+     */
+    protected static class GeneratedStream extends InputStream {
+
+        protected long remaining;
+
+        protected GeneratedStream(long length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            return remaining-- > 0 ? (int) (remaining % 251) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = (int) Math.min(len, remaining);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte) read();
+            }
+            // Zero bytes at end of message must not be removed
+            if (remaining == 0) {
+                Arrays.fill(b, off + count - Math.min(count, 3), off + count, (byte) 0);
+            }
+            return count;
+        }
+    }
+}
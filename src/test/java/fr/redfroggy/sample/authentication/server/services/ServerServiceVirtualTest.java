@@ -0,0 +1,86 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.protocol.CommandSet;
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.security.CipherService;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import fr.redfroggy.sample.authentication.server.configuration.AdmissionSettings;
+import fr.redfroggy.sample.authentication.server.configuration.SocketSettings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ServerServiceVirtualTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected static final int CLIENTS = 200;
+
+    protected ServerService service = new ServerService();
+
+    protected ServerSocket serverSocket;
+
+    protected Thread server;
+
+    @Before
+    public void init() throws Exception {
+        serverSocket = new ServerSocket(0, CLIENTS, InetAddress.getLoopbackAddress());
+
+        ReflectionTestUtils.setField(service, "socket", serverSocket);
+        ReflectionTestUtils.setField(service, "cipherService", new CipherService(Algorithm.AES, KEY_AES));
+        ReflectionTestUtils.setField(service, "sessionExecutor", Executors.newVirtualThreadPerTaskExecutor());
+        ReflectionTestUtils.setField(service, "settings", new SocketSettings());
+        ReflectionTestUtils.setField(service, "sessionStore", new SessionStore(16, 60000, 1));
+
+        // Every client keeps its handshake in progress
+        AdmissionSettings admissionSettings = new AdmissionSettings();
+        admissionSettings.setMaxHandshakes(CLIENTS);
+        ReflectionTestUtils.setField(service, "admissionSettings", admissionSettings);
+
+        server = new Thread(service::run);
+        server.start();
+    }
+
+    @After
+    public void stop() throws Exception {
+        service.stop();
+        server.join(5000);
+        Assert.assertFalse(server.isAlive());
+    }
+
+    @Test
+    public void run_ConcurrentSessions() throws Exception {
+
+        // Every client stays connected while the others are served, each session keeps blocking on its socket
+        List<Socket> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+            client.getOutputStream().write(CommandSet.frame(BytesUtils.hexToBytes("13")));
+            clients.add(client);
+        }
+
+        for (Socket client : clients) {
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            Assert.assertEquals(16, in.readInt());
+            in.readFully(new byte[16]);
+        }
+        Assert.assertEquals(CLIENTS, service.sessions.size());
+
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.commons.security.Algorithm;
+import fr.redfroggy.sample.authentication.commons.utils.BytesUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SessionStoreTest {
+
+    protected static final byte[] KEY_AES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E");
+
+    protected static final byte[] KEY_TDES = BytesUtils.hexToBytes("7788554411224455DD66E8F6F2B4A54E0011223344556677");
+
+    protected long now = 1000;
+
+    protected SessionStore store(int capacity, int segments) {
+        return new SessionStore(capacity, 100, segments) {
+            @Override
+            protected long now() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void putGet() {
+        SessionStore store = store(16, 4);
+        store.put(1, Algorithm.AES, KEY_AES);
+        store.put(2, Algorithm.TKTDES, KEY_TDES);
+
+        Assert.assertTrue(store.touch(1, 3, 48));
+        SessionRecord record = store.get(1);
+        Assert.assertEquals(Algorithm.AES, record.getAlgorithm());
+        Assert.assertArrayEquals(KEY_AES, record.getKey());
+        Assert.assertEquals(3, record.getMessages());
+        Assert.assertEquals(48, record.getBytes());
+        Assert.assertArrayEquals(KEY_TDES, store.get(2).getKey());
+
+        Assert.assertTrue(store.remove(1));
+        Assert.assertFalse(store.remove(1));
+        Assert.assertNull(store.get(1));
+        Assert.assertFalse(store.touch(1, 1, 16));
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void put_EvictLeastRecentlySeen() {
+        SessionStore store = store(3, 1);
+        store.put(1, Algorithm.AES, KEY_AES);
+        store.put(2, Algorithm.AES, KEY_AES);
+        store.put(3, Algorithm.AES, KEY_AES);
+        store.touch(1, 1, 16);
+        store.put(4, Algorithm.AES, KEY_AES);
+
+        Assert.assertEquals(3, store.size());
+        Assert.assertNull(store.get(2));
+        Assert.assertNotNull(store.get(1));
+        Assert.assertNotNull(store.get(3));
+        Assert.assertNotNull(store.get(4));
+    }
+
+    @Test
+    public void get_Expired() {
+        SessionStore store = store(16, 1);
+        store.put(1, Algorithm.AES, KEY_AES);
+        store.put(2, Algorithm.AES, KEY_AES);
+
+        now += 60;
+        store.touch(2, 1, 16);
+        now += 60;
+
+        Assert.assertNull(store.get(1));
+        Assert.assertNotNull(store.get(2));
+        store.put(3, Algorithm.AES, KEY_AES);
+        Assert.assertEquals(2, store.size());
+    }
+
+    @Test
+    public void put_Churn() {
+        // Many evictions and removals shift index entries back, store must keep matching a plain LRU map
+        SessionStore store = store(500, 1);
+        LinkedHashMap<Long, Boolean> expected = new LinkedHashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; i++) {
+            long id = random.nextInt(2000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    store.put(id, Algorithm.AES, KEY_AES);
+                    expected.remove(id);
+                    expected.put(id, true);
+                    if (expected.size() > 500) {
+                        expected.remove(expected.keySet().iterator().next());
+                    }
+                    break;
+                case 1:
+                    Assert.assertEquals(expected.containsKey(id), store.touch(id, 1, 16));
+                    if (expected.remove(id) != null) {
+                        expected.put(id, true);
+                    }
+                    break;
+                default:
+                    Assert.assertEquals(expected.remove(id) != null, store.remove(id));
+            }
+        }
+        Assert.assertEquals(expected.size(), store.size());
+        for (long id : expected.keySet()) {
+            Assert.assertArrayEquals(KEY_AES, store.get(id).getKey());
+        }
+    }
+}
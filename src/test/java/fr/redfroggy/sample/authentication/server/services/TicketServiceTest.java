@@ -0,0 +1,59 @@
+package fr.redfroggy.sample.authentication.server.services;
+
+import fr.redfroggy.sample.authentication.server.configuration.TicketSettings;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TicketServiceTest {
+
+    protected TicketSettings settings = new TicketSettings();
+
+    protected TicketService service;
+
+    @Before
+    public void init() throws Exception {
+        service = new TicketService();
+        ReflectionTestUtils.setField(service, "settings", settings);
+    }
+
+    @Test
+    public void issueOpen() throws Exception {
+        long id = service.nextId();
+        byte[] ticket = service.issue(id);
+
+        Assert.assertNotEquals(TicketService.NONE, id);
+        Assert.assertEquals(id, service.open(ticket, 0, ticket.length));
+    }
+
+    @Test
+    public void open_Tampered() throws Exception {
+        byte[] ticket = service.issue(service.nextId());
+        ticket[20] ^= 0x01;
+
+        Assert.assertEquals(TicketService.NONE, service.open(ticket, 0, ticket.length));
+        Assert.assertEquals(TicketService.NONE, service.open(ticket, 0, 10));
+    }
+
+    @Test
+    public void open_Expired() throws Exception {
+        settings.setLifetime(-1);
+        byte[] ticket = service.issue(service.nextId());
+
+        Assert.assertFalse(service.isEnabled());
+        Assert.assertEquals(TicketService.NONE, service.open(ticket, 0, ticket.length));
+    }
+
+    @Test
+    public void open_OtherServer() throws Exception {
+        byte[] ticket = service.issue(service.nextId());
+
+        TicketService other = new TicketService();
+        ReflectionTestUtils.setField(other, "settings", settings);
+        Assert.assertEquals(TicketService.NONE, other.open(ticket, 0, ticket.length));
+    }
+}